@@ -0,0 +1,71 @@
+package join.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.helper.TsvLoader;
+import join.manager.BlockManager;
+import join.manager.ReplacementPolicy;
+
+/**
+ * Pins and unpins the blocks of the principals sample round-robin, with or
+ * without a buffer pool.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockManagerBenchmark {
+
+	@Param({ "10000" })
+	public int blockSize;
+	@Param({ "50" })
+	public int blockCount;
+	@Param({ "none", "lru", "clock" })
+	public String replacement;
+	@Param({ "1" })
+	public int scaleFactor;
+
+	private BlockManager blockManager;
+	private Block[] blocks;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		String data = System.getProperty("join.data", "imdb");
+		blockManager = new BlockManager(blockCount, blockSize, null,
+				replacement.equals("none") ? null : ReplacementPolicy.forName(replacement));
+		Relation relation = new TsvLoader(blockManager, 1).load(Paths.get(data, "title.principals.sample.tsv"),
+				scaleFactor);
+		blocks = new Block[relation.getBlockCount()];
+		for (int i = 0; i < blocks.length; ++i) {
+			blocks[i] = relation.getBlock(i);
+		}
+	}
+
+	@Benchmark
+	public void pinUnpin() {
+		Block block = blocks[next];
+		next = next + 1 == blocks.length ? 0 : next + 1;
+		blockManager.pin(block);
+		blockManager.unpin(block);
+	}
+}
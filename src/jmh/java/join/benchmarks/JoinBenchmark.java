@@ -0,0 +1,121 @@
+package join.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import join.algorithms.BlockNestedLoopEquiJoin;
+import join.algorithms.HashEquiJoin;
+import join.algorithms.HybridHashEquiJoin;
+import join.algorithms.IndexNestedLoopEquiJoin;
+import join.algorithms.Join;
+import join.algorithms.NestedLoopEquiJoin;
+import join.algorithms.ParallelHashEquiJoin;
+import join.algorithms.SortMergeEquiJoin;
+import join.datastructures.Relation;
+import join.helper.TsvLoader;
+import join.index.BPlusTreeIndex;
+import join.manager.BlockManager;
+
+/**
+ * Joins the title basics and principals samples (from the directory in the
+ * system property <tt>join.data</tt>, <tt>imdb</tt> by default) on the title id.
+ * Besides the time per join, the simulated IO and the number of joins are
+ * reported as the secondary results <tt>io</tt> and <tt>joins</tt>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoinBenchmark {
+
+	@Param({ "nested-loop", "block-nested-loop", "hash", "hybrid-hash", "parallel-hash", "sort-merge", "index" })
+	public String algorithm;
+	@Param({ "100000" })
+	public int blockSize;
+	@Param({ "50" })
+	public int blockCount;
+	@Param({ "0" })
+	public int bucketCount;
+	@Param({ "1", "4" })
+	public int scaleFactor;
+
+	private BlockManager blockManager;
+	private Relation basics;
+	private Relation principals;
+	private Join join;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		String data = System.getProperty("join.data", "imdb");
+		blockManager = new BlockManager(blockCount, blockSize);
+		TsvLoader loader = new TsvLoader(blockManager, 1);
+		basics = loader.load(Paths.get(data, "title.basics.sample.tsv"), scaleFactor);
+		principals = loader.load(Paths.get(data, "title.principals.sample.tsv"), scaleFactor);
+		join = createJoin();
+	}
+
+	private Join createJoin() {
+		switch (algorithm) {
+		case "nested-loop":
+			return new NestedLoopEquiJoin(blockManager);
+		case "block-nested-loop":
+			return new BlockNestedLoopEquiJoin(blockManager);
+		case "hash":
+			return new HashEquiJoin(bucketCount, blockManager);
+		case "hybrid-hash":
+			return new HybridHashEquiJoin(blockManager);
+		case "parallel-hash":
+			return new ParallelHashEquiJoin(Runtime.getRuntime().availableProcessors(), blockManager);
+		case "sort-merge":
+			return new SortMergeEquiJoin(blockManager);
+		case "index":
+			return new IndexNestedLoopEquiJoin(new BPlusTreeIndex(principals, 0, blockManager), blockManager);
+		default:
+			throw new IllegalArgumentException("unknown algorithm: " + algorithm);
+		}
+	}
+
+	/**
+	 * The simulated IO and the number of joins of an iteration. JMH sums both over
+	 * the measurement iterations, so <tt>io</tt> divided by <tt>joins</tt> is the
+	 * IO per join.
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class IOCounter {
+		public long io;
+		public long joins;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			io = 0;
+			joins = 0;
+		}
+	}
+
+	@Benchmark
+	public void join(IOCounter counter, Blackhole blackhole) {
+		long prevIOCount = blockManager.getIOCount();
+		join.join(basics, 0, principals, 0, blackhole::consume);
+		counter.io += blockManager.getIOCount() - prevIOCount;
+		counter.joins++;
+	}
+}
@@ -1,28 +1,54 @@
 package join;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import java.util.function.Consumer;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Multiset;
 
+import join.algorithms.BlockNestedLoopEquiJoin;
 import join.algorithms.HashEquiJoin;
+import join.algorithms.HybridHashEquiJoin;
+import join.algorithms.IndexNestedLoopEquiJoin;
 import join.algorithms.Join;
+import join.algorithms.JoinSink;
 import join.algorithms.NestedLoopEquiJoin;
+import join.algorithms.ParallelHashEquiJoin;
+import join.algorithms.SortMergeEquiJoin;
+import join.datastructures.BlockLayout;
 import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.RelationStatistics.AttributeStatistics;
 import join.datastructures.Tuple;
 import join.helper.PinningOutputTarget;
+import join.helper.RelationFile;
+import join.helper.ResultFingerprint;
+import join.helper.TsvLoader;
+import join.index.BPlusTreeIndex;
+import join.index.Index;
+import join.index.StaticHashIndex;
 import join.manager.BlockManager;
+import join.manager.ReplacementPolicy;
+import join.metrics.MetricsRecorder;
+import join.operators.Aggregate;
+import join.operators.AggregateOperator;
+import join.operators.HashAggregation;
+import join.operators.HashJoinOperator;
+import join.operators.NestedLoopJoinOperator;
+import join.operators.Operator;
+import join.operators.ScanOperator;
+import join.planner.JoinPlan;
+import join.planner.JoinPlanner;
 
 public class Main {
 
@@ -30,20 +56,50 @@ public class Main {
 	private Integer blockCount = 50;
 	@Parameter(names = "-blockSize", description = "Maximum block size")
 	private Integer blockSize = 100000;
+	@Parameter(names = "-blockFile", description = "File to store unpinned blocks in (blocks stay on the heap, if omitted)")
+	private String blockFile;
+	@Parameter(names = "-replacement", description = "Buffer replacement policy: lru, mru, clock, lru-k (K = 2) or lru-<K>, e.g. lru-3 (blocks are unloaded when unpinned, if omitted)")
+	private String replacement;
+	@Parameter(names = "-readAhead", description = "Number of blocks scans read ahead in the background, e.g. from the block file")
+	private int readAhead = 0;
+	@Parameter(names = "-layout", description = "Block layout: ROWS, COLUMNS (dictionary-encoded) or COMPRESSED (prefix-, delta- or dictionary-encoded)")
+	private BlockLayout layout = BlockLayout.ROWS;
 
-	@Parameter(names = "-bucketCount", description = "Bucket count for hash algorithms")
-	private Integer bucketCount = 5;
+	@Parameter(names = "-bucketCount", description = "Bucket count for hash algorithms (chosen from the relation sizes, if omitted)")
+	private Integer bucketCount;
+	@Parameter(names = "-plan", description = "Let the planner choose the algorithm from the statistics and only run that one")
+	private boolean plan = false;
+	@Parameter(names = "-bloomFilter", description = "False-positive rate of the Bloom filter that hash and block nested-loop joins pre-filter with (no filter, if omitted)")
+	private Double falsePositiveRate;
+	@Parameter(names = "-index", description = "Build an index on the join attribute of relation 2 and evaluate an index nested-loop join with it: hash or btree")
+	private String index;
+	@Parameter(names = "-metrics", description = "Record the IO of every phase, pin durations, tuples and time of the joins and export them to this file (.json or .csv)")
+	private String metrics;
+	@Parameter(names = "-materialize", description = "Compare join results by collecting all their tuples in memory instead of by their fingerprints")
+	private boolean materialize = false;
+	@Parameter(names = "-threads", description = "Number of threads for loading and parallel algorithms")
+	private Integer threads = Runtime.getRuntime().availableProcessors();
 
-	@Parameter(names = { "-r1", "-relation1" }, required = true, description = "csv file 1 to join")
+	@Parameter(names = { "-r1", "-relation1" }, description = "tsv or binary relation file (.rel) 1 to join")
 	private String relationPath1;
-	@Parameter(names = { "-r2", "-relation2" }, required = true, description = "csv file 2 to join")
+	@Parameter(names = { "-r2", "-relation2" }, description = "tsv or binary relation file (.rel) 2 to join")
 	private String relationPath2;
+	@Parameter(names = "-cache", description = "Keep a binary copy (.rel) next to every tsv file and load it, while it is up to date")
+	private boolean cache = false;
 
-	@Parameter(names = { "-j1", "-join1" }, required = true, description = "join attribute index 1")
+	@Parameter(names = { "-j1", "-join1" }, description = "join attribute index 1")
 	private Integer joinAttribute1;
-	@Parameter(names = { "-j2", "-join2" }, required = true, description = "join attribute index 2")
+	@Parameter(names = { "-j2", "-join2" }, description = "join attribute index 2")
 	private Integer joinAttribute2;
 
+	@Parameter(names = "-groupBy", description = "Attributes of the join result to group by and aggregate instead of comparing the join algorithms")
+	private List<Integer> groupBy;
+	@Parameter(names = "-aggregate", description = "Aggregates of the groups: count, min:<attribute>, max:<attribute> or sum:<attribute>")
+	private List<String> aggregates = Arrays.asList("count");
+
+	@Parameter(names = "-chain", description = "Chain of joins to evaluate pipelined instead of -r1/-r2: file,file:leftAttribute:rightAttribute[:hash|nl],... where the left attribute indexes the tuples joined so far")
+	private String chain;
+
 	@Parameter(names = { "-s1", "-scale1" }, description = "scale factor 1")
 	private Integer scaleFactor1 = 1;
 	@Parameter(names = { "-s2", "-scale2" }, description = "scale factor 2")
@@ -52,62 +108,360 @@ public class Main {
 	public static void main(String[] args) throws IOException {
 		Main main = new Main();
 		JCommander.newBuilder().addObject(main).build().parse(args);
+		if (main.chain == null && (main.relationPath1 == null || main.relationPath2 == null
+				|| main.joinAttribute1 == null || main.joinAttribute2 == null)) {
+			throw new ParameterException("-r1, -r2, -j1 and -j2 are required without -chain");
+		}
 		main.run();
 	}
 
 	private void run() throws IOException {
-		BlockManager blockManager = new BlockManager(blockCount, blockSize);
+		try (BlockManager blockManager = new BlockManager(blockCount, blockSize,
+				blockFile == null ? null : Paths.get(blockFile),
+				getReplacementPolicy(), layout)) {
+			blockManager.setReadAhead(readAhead);
+			run(blockManager);
+		}
+	}
+
+	private void run(BlockManager blockManager) throws IOException {
+		if (chain != null) {
+			runChain(blockManager);
+			return;
+		}
 
-		Relation relation1 = loadRelationFromCSV(blockManager, Paths.get(relationPath1), scaleFactor1);
-		Relation relation2 = loadRelationFromCSV(blockManager, Paths.get(relationPath2), scaleFactor2);
+		Relation relation1 = loadRelation(blockManager, Paths.get(relationPath1), scaleFactor1);
+		Relation relation2 = loadRelation(blockManager, Paths.get(relationPath2), scaleFactor2);
 		System.out.println(
 				"Input relation sizes (blocks): " + relation1.getBlockCount() + " " + relation2.getBlockCount());
 
-		Join nlj = new NestedLoopEquiJoin(blockManager);
-		Multiset<Tuple> resultNLJ = getJoinResult(relation1, relation2, nlj);
+		MetricsRecorder recorder = metrics == null ? null : new MetricsRecorder(blockManager);
+		if (groupBy != null) {
+			runAggregation(blockManager, relation1, relation2, recorder);
+		} else if (plan) {
+			runPlan(blockManager, relation1, relation2, recorder);
+		} else {
+			runAll(blockManager, relation1, relation2, recorder);
+		}
+		if (recorder != null) {
+			writeMetrics(recorder);
+		}
+	}
+
+	private void writeMetrics(MetricsRecorder recorder) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(Paths.get(metrics))) {
+			if (metrics.endsWith(".csv")) {
+				recorder.writeCsv(writer);
+			} else {
+				recorder.writeJson(writer);
+			}
+		}
+		System.out.println("Metrics written to " + metrics);
+	}
+
+	private static Join measure(MetricsRecorder recorder, Join join) {
+		return recorder == null ? join : recorder.measure(join.getClass().getCanonicalName(), join);
+	}
+
+	private void runAll(BlockManager blockManager, Relation relation1, Relation relation2, MetricsRecorder recorder)
+			throws IOException {
+		Join nlj = measure(recorder, new NestedLoopEquiJoin(blockManager));
+		JoinResult resultNLJ = getJoinResult(relation1, relation2, nlj);
 		System.out.println("NLJ result: " + resultNLJ.size());
 
 		List<Join> joinsToEvaluate = new ArrayList<>();
-		joinsToEvaluate.add(new HashEquiJoin(bucketCount, blockManager));
+		double filterRate = falsePositiveRate == null ? 0 : falsePositiveRate;
+		joinsToEvaluate.add(new BlockNestedLoopEquiJoin(filterRate, blockManager));
+		joinsToEvaluate.add(new HashEquiJoin(bucketCount == null ? 0 : bucketCount, filterRate, blockManager));
+		joinsToEvaluate.add(new HybridHashEquiJoin(blockManager));
+		joinsToEvaluate.add(new ParallelHashEquiJoin(threads, blockManager));
+		joinsToEvaluate.add(new SortMergeEquiJoin(blockManager));
+		if (index != null) {
+			joinsToEvaluate.add(new IndexNestedLoopEquiJoin(buildIndex(blockManager, relation2), blockManager));
+		}
 
 		System.out.println();
 
 		for (Join algorithm : joinsToEvaluate) {
 			System.out.println(algorithm.getClass().getCanonicalName());
 
-			System.out.println("IO cost estimate: " + algorithm.getIOEstimate(relation1, relation2));
+			System.out.println("IO cost estimate: " + algorithm.getIOEstimate(relation1, joinAttribute1, relation2, joinAttribute2));
 
 			long prevIOCount = blockManager.getIOCount();
-			Multiset<Tuple> joinResult = getJoinResult(relation1, relation2, algorithm);
+			long prevIONanos = blockManager.getIONanos();
+			long prevHits = blockManager.getHitCount();
+			long prevMisses = blockManager.getMissCount();
+			JoinResult joinResult = getJoinResult(relation1, relation2, measure(recorder, algorithm));
 			System.out.println("Result size: " + joinResult.size());
-			System.out.println("Result equals NLJ: " + joinResult.equals(resultNLJ));
+			System.out.println("Result equals NLJ: " + joinResult.matches(resultNLJ));
 			System.out.println("Real IO cost:" + (blockManager.getIOCount() - prevIOCount));
+			if (blockFile != null) {
+				System.out.println("Real IO time (ms): " + (blockManager.getIONanos() - prevIONanos) / 1000000);
+			}
+			if (replacement != null) {
+				long hits = blockManager.getHitCount() - prevHits;
+				long misses = blockManager.getMissCount() - prevMisses;
+				System.out.println("Buffer hits: " + hits + ", misses: " + misses + ", hit ratio: "
+						+ (hits + misses == 0 ? 0 : (double) hits / (hits + misses)));
+			}
 			System.out.println();
 		}
 	}
 
-	protected Multiset<Tuple> getJoinResult(Relation relation1, Relation relation2, Join nlj) {
-		Multiset<Tuple> result = HashMultiset.create();
-		nlj.join(relation1, joinAttribute1, relation2, joinAttribute2, result::add);
+	/**
+	 * Aggregates the join result streamed from the hash join, which leaves a
+	 * single block to the aggregation, and compares the groups to aggregating the
+	 * materialized join result with all free blocks.
+	 */
+	private void runAggregation(BlockManager blockManager, Relation relation1, Relation relation2,
+			MetricsRecorder recorder) {
+		int[] attributes = getGroupBy();
+		List<Aggregate> parsed = getAggregates();
+		Join join = measure(recorder, new HashEquiJoin(blockManager));
+
+		long prevIOCount = blockManager.getIOCount();
+		HashAggregation aggregation = new HashAggregation(attributes, parsed, blockManager);
+		join.join(relation1, joinAttribute1, relation2, joinAttribute2, aggregation);
+		JoinResult streamed = new JoinResult(materialize);
+		aggregation.run(streamed);
+		System.out.println("Streamed groups: " + streamed.size());
+		System.out.println("Real IO cost:" + (blockManager.getIOCount() - prevIOCount));
+
+		prevIOCount = blockManager.getIOCount();
+		Relation result = new Relation();
+		try (PinningOutputTarget target = new PinningOutputTarget(result, blockManager)) {
+			join.join(relation1, joinAttribute1, relation2, joinAttribute2, target::addTuple);
+		}
+		JoinResult materialized = new JoinResult(materialize);
+		new AggregateOperator(new ScanOperator(result, blockManager), attributes, parsed, blockManager)
+				.run(materialized);
+		System.out.println("Materialized groups: " + materialized.size());
+		System.out.println("Real IO cost:" + (blockManager.getIOCount() - prevIOCount));
+		System.out.println("Results equal: " + streamed.matches(materialized));
+	}
+
+	private ReplacementPolicy getReplacementPolicy() {
+		if (replacement == null)
+			return null;
+		try {
+			return ReplacementPolicy.forName(replacement);
+		} catch (IllegalArgumentException e) {
+			throw new ParameterException(e.getMessage());
+		}
+	}
+
+	private int[] getGroupBy() {
+		return groupBy.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private List<Aggregate> getAggregates() {
+		List<Aggregate> result = new ArrayList<>();
+		for (String aggregate : aggregates) {
+			try {
+				result.add(Aggregate.parse(aggregate));
+			} catch (IllegalArgumentException e) {
+				throw new ParameterException(e.getMessage());
+			}
+		}
 		return result;
 	}
 
-	private static Relation loadRelationFromCSV(BlockManager blockManager, Path p, int scaleFactor) throws IOException {
-		Relation relation = new Relation();
-		CSVParser parser = CSVFormat.TDF.parse(Files.newBufferedReader(p));
-		try (PinningOutputTarget target = new PinningOutputTarget(relation, blockManager)) {
-			for (CSVRecord r : parser) {
-				int size = r.size();
-				String[] data = new String[size];
-				for (int i = 0; i < data.length; ++i) {
-					data[i] = r.get(i);
-				}
-				for (int i = 0; i < scaleFactor; ++i) {
-					target.addTuple(new Tuple(data));
-				}
+	private Index buildIndex(BlockManager blockManager, Relation relation) {
+		long prevIOCount = blockManager.getIOCount();
+		Index result;
+		if (index.equals("hash")) {
+			result = new StaticHashIndex(relation, joinAttribute2, blockManager);
+		} else if (index.equals("btree")) {
+			result = new BPlusTreeIndex(relation, joinAttribute2, blockManager);
+		} else {
+			throw new ParameterException("unknown index: " + index);
+		}
+		System.out.println("Index " + result.getClass().getSimpleName() + " blocks: " + result.getBlockCount()
+				+ ", lookup IO estimate: " + result.getLookupIOEstimate() + ", build IO cost: "
+				+ (blockManager.getIOCount() - prevIOCount));
+		return result;
+	}
+
+	/**
+	 * Evaluates the chain of joins pipelined and compares it to joining the
+	 * relations one after another with materialized intermediate results.
+	 */
+	private void runChain(BlockManager blockManager) throws IOException {
+		String[] steps = chain.split(",");
+		Relation first = loadRelation(blockManager, Paths.get(steps[0]), 1);
+		List<Relation> relations = new ArrayList<>();
+		List<int[]> attributes = new ArrayList<>();
+		Operator plan = new ScanOperator(first, blockManager);
+		for (int i = 1; i < steps.length; ++i) {
+			String[] parts = steps[i].split(":");
+			if (parts.length < 3 || parts.length > 4) {
+				throw new ParameterException("invalid join in chain: " + steps[i]);
+			}
+			Relation relation = loadRelation(blockManager, Paths.get(parts[0]), 1);
+			int leftAttribute = Integer.parseInt(parts[1]);
+			int rightAttribute = Integer.parseInt(parts[2]);
+			String kind = parts.length == 4 ? parts[3] : "hash";
+			Operator scan = new ScanOperator(relation, blockManager);
+			if (kind.equals("hash")) {
+				plan = new HashJoinOperator(plan, leftAttribute, scan, rightAttribute, blockManager);
+			} else if (kind.equals("nl")) {
+				plan = new NestedLoopJoinOperator(plan, leftAttribute, scan, rightAttribute, blockManager);
+			} else {
+				throw new ParameterException("unknown join operator in chain: " + kind);
+			}
+			relations.add(relation);
+			attributes.add(new int[] { leftAttribute, rightAttribute });
+		}
+
+		if (groupBy != null) {
+			plan = new AggregateOperator(plan, getGroupBy(), getAggregates(), blockManager);
+		}
+
+		long prevIOCount = blockManager.getIOCount();
+		JoinResult pipelined = new JoinResult(materialize);
+		plan.run(pipelined);
+		System.out.println("Pipelined result size: " + pipelined.size());
+		System.out.println("Real IO cost:" + (blockManager.getIOCount() - prevIOCount));
+
+		prevIOCount = blockManager.getIOCount();
+		Relation current = first;
+		for (int i = 0; i < relations.size(); ++i) {
+			Relation result = new Relation();
+			try (PinningOutputTarget target = new PinningOutputTarget(result, blockManager)) {
+				new HashEquiJoin(blockManager).join(current, attributes.get(i)[0], relations.get(i),
+						attributes.get(i)[1], target::addTuple);
+			}
+			current = result;
+		}
+		JoinResult materialized = new JoinResult(materialize);
+		if (groupBy != null) {
+			HashAggregation aggregation = new HashAggregation(getGroupBy(), getAggregates(), blockManager);
+			new ScanOperator(current, blockManager).run(aggregation);
+			aggregation.run(materialized);
+		} else {
+			new ScanOperator(current, blockManager).run(materialized);
+		}
+		System.out.println("Materialized result size: " + materialized.size());
+		System.out.println("Real IO cost:" + (blockManager.getIOCount() - prevIOCount));
+		System.out.println("Results equal: " + pipelined.matches(materialized));
+	}
+
+	private void runPlan(BlockManager blockManager, Relation relation1, Relation relation2,
+			MetricsRecorder recorder) {
+		printStatistics("Relation 1", relation1, joinAttribute1);
+		printStatistics("Relation 2", relation2, joinAttribute2);
+
+		JoinPlanner planner = new JoinPlanner(blockManager, threads);
+		List<JoinPlan> candidates = planner.getCandidates(relation1, joinAttribute1, relation2, joinAttribute2);
+		System.out.println();
+		System.out.println("Candidates:");
+		for (JoinPlan candidate : candidates) {
+			System.out.println("  " + candidate);
+		}
 
+		JoinPlan chosen = candidates.get(0);
+		System.out.println();
+		System.out.println("Chosen: " + chosen.getDescription());
+		long prevIOCount = blockManager.getIOCount();
+		long[] resultSize = new long[1];
+		measure(recorder, chosen.getJoin()).join(relation1, joinAttribute1, relation2, joinAttribute2,
+				tuple -> resultSize[0]++);
+		long chosenIO = blockManager.getIOCount() - prevIOCount;
+		System.out.println("Estimated IO: " + chosen.getEstimatedIO() + ", real IO: " + chosenIO);
+		// the block nested-loop join is the baseline the plan has to beat
+		if (!(chosen.getJoin() instanceof BlockNestedLoopEquiJoin)) {
+			for (JoinPlan candidate : candidates) {
+				if (!(candidate.getJoin() instanceof BlockNestedLoopEquiJoin))
+					continue;
+				prevIOCount = blockManager.getIOCount();
+				candidate.getJoin().join(relation1, joinAttribute1, relation2, joinAttribute2, tuple -> {
+				});
+				long baselineIO = blockManager.getIOCount() - prevIOCount;
+				System.out.println("Block nested-loop join real IO: " + baselineIO + ", chosen plan not worse: "
+						+ (chosenIO <= baselineIO));
 			}
 		}
-		return relation;
+		System.out.println("Estimated result size: "
+				+ JoinPlanner.estimateResultSize(relation1, joinAttribute1, relation2, joinAttribute2)
+				+ ", real result size: " + resultSize[0]);
+	}
+
+	private static void printStatistics(String name, Relation relation, int joinAttribute) {
+		RelationStatistics statistics = relation.getStatistics();
+		if (statistics == null)
+			return;
+		AttributeStatistics attribute = statistics.getAttribute(joinAttribute);
+		System.out.println(name + ": " + statistics.getTupleCount() + " tuples, " + statistics.getBlockCount()
+				+ " blocks, join attribute: "
+				+ (attribute == null ? "missing"
+						: attribute.getDistinctCount() + " distinct values, frequent values "
+								+ attribute.getHeavyHitters() + ", histogram " + attribute.getHistogram()));
+	}
+
+	protected JoinResult getJoinResult(Relation relation1, Relation relation2, Join nlj) {
+		JoinResult result = new JoinResult(materialize);
+		nlj.join(relation1, joinAttribute1, relation2, joinAttribute2, (JoinSink) result);
+		return result;
+	}
+
+	/**
+	 * The fingerprint of a join result and, if it is materialized, its tuples.
+	 * Results are compared by their tuples, if both are materialized, and by their
+	 * fingerprints otherwise. Join results are received as batches of tuple
+	 * pairs, which are only concatenated if the result is materialized.
+	 */
+	protected static final class JoinResult implements Consumer<Tuple>, JoinSink {
+		private final ResultFingerprint fingerprint = new ResultFingerprint();
+		private final Multiset<Tuple> tuples;
+
+		private JoinResult(boolean materialize) {
+			this.tuples = materialize ? HashMultiset.create() : null;
+		}
+
+		@Override
+		public void accept(Tuple tuple) {
+			fingerprint.accept(tuple);
+			if (tuples != null)
+				tuples.add(tuple);
+		}
+
+		@Override
+		public void accept(Tuple[] left, Tuple[] right, int count) {
+			fingerprint.accept(left, right, count);
+			if (tuples != null) {
+				for (int i = 0; i < count; ++i) {
+					tuples.add(Tuple.concat(left[i], right[i]));
+				}
+			}
+		}
+
+		public long size() {
+			return fingerprint.getCount();
+		}
+
+		public boolean matches(JoinResult other) {
+			if (tuples != null && other.tuples != null)
+				return tuples.equals(other.tuples);
+			return fingerprint.matches(other.fingerprint);
+		}
+	}
+
+	private Relation loadRelation(BlockManager blockManager, Path path, int scaleFactor) throws IOException {
+		RelationFile relationFile = new RelationFile(blockManager);
+		if (path.toString().endsWith(RelationFile.EXTENSION))
+			return relationFile.load(path, scaleFactor);
+		if (!cache)
+			return new TsvLoader(blockManager, threads).load(path, scaleFactor);
+
+		Path binaryPath = path.resolveSibling(path.getFileName() + RelationFile.EXTENSION);
+		if (!Files.exists(binaryPath)
+				|| Files.getLastModifiedTime(binaryPath).compareTo(Files.getLastModifiedTime(path)) < 0) {
+			// the copy is written unscaled, so it can be reused with other scale factors
+			Relation relation = new TsvLoader(blockManager, threads).load(path, 1);
+			relationFile.write(relation, binaryPath);
+			if (scaleFactor == 1)
+				return relation;
+		}
+		return relationFile.load(binaryPath, scaleFactor);
 	}
 }
@@ -0,0 +1,196 @@
+package join.algorithms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
+import join.helper.PinningOutputTarget;
+import join.manager.BlockManager;
+
+/**
+ * Block nested-loop join that pins as many outer blocks as the buffer pool
+ * allows (all free blocks but two, one for the inner block and one for the
+ * consumer's output), builds a hash table on their join attribute and scans the
+ * inner relation once per chunk of outer blocks.
+ *
+ * Optionally, if the inner relation has to be scanned more than once, a Bloom
+ * filter is built on the keys of the outer relation first, and the inner tuples
+ * that pass it are copied to a smaller temporary relation, which is then scanned
+ * instead. The filter is only used, if it is expected to save IO.
+ */
+public class BlockNestedLoopEquiJoin implements Join {
+
+	protected final BlockManager blockManager;
+	protected final double falsePositiveRate;
+
+	public BlockNestedLoopEquiJoin(BlockManager blockManager) {
+		this(0, blockManager);
+	}
+
+	/**
+	 * Constructs a block nested-loop join that may filter the inner relation with
+	 * a Bloom filter on the keys of the outer relation.
+	 * 
+	 * @param falsePositiveRate The false-positive rate of the Bloom filter, or 0 to
+	 *                          not filter.
+	 * @param blockManager      The block manager to use.
+	 */
+	public BlockNestedLoopEquiJoin(double falsePositiveRate, BlockManager blockManager) {
+		if (falsePositiveRate < 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("false-positive rate must be at least 0 and less than 1");
+		}
+		this.blockManager = blockManager;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	@Override
+	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			Consumer<Tuple> consumer) {
+		joinPairs(relation1, joinAttribute1, relation2, joinAttribute2,
+				(t1, t2) -> consumer.accept(Join.joinTuple(t1, joinAttribute1, t2, joinAttribute2)));
+	}
+
+	@Override
+	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2, JoinSink sink) {
+		JoinBatch batch = new JoinBatch(sink);
+		joinPairs(relation1, joinAttribute1, relation2, joinAttribute2, batch::add);
+		batch.flush();
+	}
+
+	/**
+	 * Joins the relations and hands every result to <tt>output</tt> as the pair
+	 * of the tuple of the first and the tuple of the second relation, without
+	 * building the result tuple.
+	 */
+	protected void joinPairs(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output) {
+
+		// use smaller relation as outer relation
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation outer = swapped ? relation2 : relation1;
+		int outerAttribute = swapped ? joinAttribute2 : joinAttribute1;
+		int innerAttribute = swapped ? joinAttribute1 : joinAttribute2;
+
+		int chunkSize = getChunkSize();
+		Relation inner = swapped ? relation1 : relation2;
+		if (getFilteredIOEstimate(outer, outerAttribute, inner, innerAttribute) < getIOEstimate(outer.getBlockCount(),
+				inner.getBlockCount())) {
+			blockManager.markPhase("filter");
+			inner = filter(outer, outerAttribute, inner, innerAttribute);
+		}
+		blockManager.markPhase("join");
+
+		List<Block> chunk = new ArrayList<>(chunkSize);
+		TupleHashTable hashTable = new TupleHashTable(outerAttribute, 0);
+
+		Iterator<Block> outerBlocks = outer.iterator();
+		while (outerBlocks.hasNext()) {
+			// pin the next chunk of outer blocks and hash their tuples
+			while (chunk.size() < chunkSize && outerBlocks.hasNext()) {
+				Block block = outerBlocks.next();
+				blockManager.pin(block);
+				chunk.add(block);
+				for (Tuple tuple : block) {
+					hashTable.add(tuple);
+				}
+			}
+
+			// stream the inner relation once against the whole chunk
+			for (Block innerBlock : inner) {
+				blockManager.pin(innerBlock);
+				for (Tuple innerTuple : innerBlock) {
+					if (swapped)
+						hashTable.forEachMatch(innerTuple.getKey(innerAttribute),
+								outerTuple -> output.accept(innerTuple, outerTuple));
+					else
+						hashTable.forEachMatch(innerTuple.getKey(innerAttribute),
+								outerTuple -> output.accept(outerTuple, innerTuple));
+				}
+				blockManager.unpin(innerBlock);
+			}
+
+			for (Block block : chunk) {
+				blockManager.unpin(block);
+			}
+			chunk.clear();
+			hashTable.clear();
+		}
+	}
+
+	/**
+	 * Copies the tuples of the inner relation, which pass a Bloom filter on the
+	 * keys of the outer relation, to a new relation.
+	 */
+	private Relation filter(Relation outer, int outerAttribute, Relation inner, int innerAttribute) {
+		SemiJoinFilter filter = new SemiJoinFilter(outer, outerAttribute, falsePositiveRate);
+		for (Block block : outer) {
+			blockManager.pin(block);
+			filter.add(block);
+			blockManager.unpin(block);
+		}
+
+		Relation filtered = new Relation();
+		try (PinningOutputTarget target = new PinningOutputTarget(filtered, blockManager)) {
+			for (Block block : inner) {
+				blockManager.pin(block);
+				for (Tuple tuple : block) {
+					if (filter.mightMatch(tuple, innerAttribute))
+						target.addTuple(tuple);
+				}
+				blockManager.unpin(block);
+			}
+		}
+		return filtered;
+	}
+
+	/**
+	 * Returns the number of outer blocks that are pinned at once.
+	 *
+	 * @return the number of outer blocks per chunk, at least one
+	 */
+	protected int getChunkSize() {
+		return Math.max(1, blockManager.getFreeBlockCount() - 2);
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, Relation relation2) {
+		return getIOEstimate(relation1, -1, relation2, -1);
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation outer = swapped ? relation2 : relation1;
+		Relation inner = swapped ? relation1 : relation2;
+
+		return Math.min(getIOEstimate(outer.getBlockCount(), inner.getBlockCount()), getFilteredIOEstimate(outer,
+				swapped ? joinAttribute2 : joinAttribute1, inner, swapped ? joinAttribute1 : joinAttribute2));
+	}
+
+	private int getIOEstimate(int outerBlocks, int innerBlocks) {
+		int chunkSize = getChunkSize();
+		int chunks = (outerBlocks + chunkSize - 1) / chunkSize;
+		return outerBlocks + chunks * innerBlocks;
+	}
+
+	/**
+	 * Estimates the IO of a join with a filtered inner relation: the outer relation
+	 * is read once more for the filter, the inner relation is read once and the
+	 * tuples passing the filter are written.
+	 */
+	private int getFilteredIOEstimate(Relation outer, int outerAttribute, Relation inner, int innerAttribute) {
+		if (falsePositiveRate == 0)
+			return Integer.MAX_VALUE;
+		int filteredBlocks = (int) Math.ceil(inner.getBlockCount()
+				* SemiJoinFilter.getPassRate(outer, outerAttribute, inner, innerAttribute, falsePositiveRate));
+		return outer.getBlockCount() + inner.getBlockCount() + filteredBlocks
+				+ getIOEstimate(outer.getBlockCount(), filteredBlocks);
+	}
+
+}
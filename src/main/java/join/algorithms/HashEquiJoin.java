@@ -1,18 +1,116 @@
 package join.algorithms;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import join.datastructures.Block;
+import join.datastructures.HeavyHitterSketch;
+import join.datastructures.JoinKey;
 import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.RelationStatistics.AttributeStatistics;
 import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
 import join.manager.BlockManager;
 
+/**
+ * Grace hash join. Both relations are partitioned into buckets, buckets of the
+ * smaller relation that do not fit into memory are partitioned again with an
+ * independent hash function, until they fit or only contain a single key.
+ *
+ * Optionally, a Bloom filter is built on the keys of the smaller relation while
+ * it is partitioned, and tuples of the larger relation that cannot have a join
+ * partner are dropped before they are written to a bucket.
+ *
+ * Tuples with frequent keys would make their buckets overflow, so the join
+ * keeps the tuples of the smaller relation with frequent keys pinned in memory
+ * and joins the tuples of the larger relation with these keys right away, see
+ * {@link SkewPartition}.
+ */
 public class HashEquiJoin implements Join {
+	/**
+	 * Buckets that still do not fit into memory after this many partitioning
+	 * passes are joined with a block nested-loop join.
+	 */
+	private static final int MAX_DEPTH = 8;
+
+	/**
+	 * The bounds of the number of counters of the sketch that detects frequent
+	 * keys. A key is frequent, if it occurs more often than once per counter.
+	 */
+	private static final int MIN_SKETCH_CAPACITY = 16;
+	private static final int MAX_SKETCH_CAPACITY = 256;
+
+	/**
+	 * The factor by which partitions are sized smaller than the memory they have
+	 * to fit into, so that the variance of the hash function and moderate skew do
+	 * not make them overflow.
+	 */
+	protected static final double FUDGE_FACTOR = 1.2;
+
 	protected final int numBuckets;
+	protected final double falsePositiveRate;
+	protected final boolean skewAware;
 	protected final BlockManager blockManager;
 
+	/**
+	 * Constructs a hash join that chooses the bucket count from the relation sizes
+	 * and the free blocks.
+	 * 
+	 * @param blockManager The block manager to use.
+	 */
+	public HashEquiJoin(BlockManager blockManager) {
+		this(0, blockManager);
+	}
+
+	/**
+	 * Constructs a hash join with a fixed bucket count for the first partitioning
+	 * pass.
+	 * 
+	 * @param numBuckets   The bucket count, or 0 to choose it adaptively.
+	 * @param blockManager The block manager to use.
+	 */
 	public HashEquiJoin(int numBuckets, BlockManager blockManager) {
+		this(numBuckets, 0, blockManager);
+	}
+
+	/**
+	 * Constructs a hash join that filters the larger relation with a Bloom filter
+	 * on the keys of the smaller relation.
+	 * 
+	 * @param numBuckets        The bucket count, or 0 to choose it adaptively.
+	 * @param falsePositiveRate The false-positive rate of the Bloom filter, or 0
+	 *                          to not filter.
+	 * @param blockManager      The block manager to use.
+	 */
+	public HashEquiJoin(int numBuckets, double falsePositiveRate, BlockManager blockManager) {
+		this(numBuckets, falsePositiveRate, true, blockManager);
+	}
+
+	/**
+	 * Constructs a hash join that can keep the frequent keys out of the buckets.
+	 * 
+	 * @param numBuckets        The bucket count, or 0 to choose it adaptively.
+	 * @param falsePositiveRate The false-positive rate of the Bloom filter, or 0
+	 *                          to not filter.
+	 * @param skewAware         Whether to keep the tuples with frequent keys in
+	 *                          memory instead of in their buckets.
+	 * @param blockManager      The block manager to use.
+	 */
+	public HashEquiJoin(int numBuckets, double falsePositiveRate, boolean skewAware, BlockManager blockManager) {
+		if (falsePositiveRate < 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("false-positive rate must be at least 0 and less than 1");
+		}
 		this.numBuckets = numBuckets;
+		this.falsePositiveRate = falsePositiveRate;
+		this.skewAware = skewAware;
 		this.blockManager = blockManager;
 	}
 
@@ -20,36 +118,240 @@ public class HashEquiJoin implements Join {
 	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
 			Consumer<Tuple> consumer) 
 	{
+		joinPairs(relation1, joinAttribute1, relation2, joinAttribute2,
+				(t1, t2) -> consumer.accept(Join.joinTuple(t1, joinAttribute1, t2, joinAttribute2)));
+	}
+
+	@Override
+	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2, JoinSink sink)
+	{
+		JoinBatch batch = new JoinBatch(sink);
+		joinPairs(relation1, joinAttribute1, relation2, joinAttribute2, batch::add);
+		batch.flush();
+	}
+
+	/**
+	 * Joins the relations and hands every result to <tt>output</tt> as the pair
+	 * of the tuple of the first and the tuple of the second relation, without
+	 * building the result tuple.
+	 */
+	protected void joinPairs(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output)
+	{
+		int bucketCount = numBuckets > 0 ? numBuckets : getBucketCount(relation1, relation2);
+
+		// The smaller relation is partitioned first: the filter and the frequent keys are taken from it
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation build = swapped ? relation2 : relation1;
+		Relation probe = swapped ? relation1 : relation2;
+		int buildAttribute = swapped ? joinAttribute2 : joinAttribute1;
+		int probeAttribute = swapped ? joinAttribute1 : joinAttribute2;
+
 		// Put tuples of each relation into buckets
-		Relation[] relation1HashTable= setupHashTable(relation1, joinAttribute1,false);
-		Relation[] relation2HashTable = setupHashTable(relation2, joinAttribute2, true);
+		blockManager.markPhase("partition");
+		SemiJoinFilter filter = null;
+		if (falsePositiveRate > 0)
+			filter = new SemiJoinFilter(build, buildAttribute, falsePositiveRate);
+		SkewPartition skew = null;
+		int skewBlocks = getSkewBlocks(blockManager.getFreeBlockCount(), bucketCount);
+		if (skewBlocks > 0)
+			skew = new SkewPartition(build, buildAttribute, probe, probeAttribute, bucketCount, skewBlocks, swapped,
+					output);
+		HashTable buildHashTable = setupHashTable(build, buildAttribute, bucketCount, 0, filter, null,
+				skew == null ? null : skew::build);
+		HashTable probeHashTable = setupHashTable(probe, probeAttribute, bucketCount, 0, null, filter,
+				skew == null ? null : skew::probe);
+		if (skew != null)
+			skew.release();
+
+		blockManager.markPhase("probe");
+		if (swapped)
+			joinHashTables(probeHashTable, joinAttribute1, buildHashTable, joinAttribute2, output, 1);
+		else
+			joinHashTables(buildHashTable, joinAttribute1, probeHashTable, joinAttribute2, output, 1);
+	}
 
-		NestedLoopEquiJoin nestedLoopJoin = new NestedLoopEquiJoin(blockManager);
-		for (int i = 0; i < numBuckets; ++i)
+	private void joinHashTables(HashTable hashTable1, int joinAttribute1, HashTable hashTable2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output, int depth)
+	{
+		for (int i = 0; i < hashTable1.buckets.length; ++i)
 		{
 			// Join each relation which represents one bucket
-			nestedLoopJoin.join(relation1HashTable[i], joinAttribute1, relation2HashTable[i], joinAttribute2, consumer);
+			boolean singleKey = hashTable1.isSingleKey(i) || hashTable2.isSingleKey(i);
+			joinBuckets(hashTable1.buckets[i], joinAttribute1, hashTable2.buckets[i], joinAttribute2, output, depth,
+					singleKey);
+		}
+	}
+
+	/**
+	 * Joins two buckets with the same hash value. A bucket is <tt>null</tt>, if
+	 * no tuple was hashed to it.
+	 */
+	protected void joinBuckets(Relation bucket1, int joinAttribute1, Relation bucket2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output)
+	{
+		joinBuckets(bucket1, joinAttribute1, bucket2, joinAttribute2, output, 1, false);
+	}
+
+	private void joinBuckets(Relation bucket1, int joinAttribute1, Relation bucket2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output, int depth, boolean singleKey)
+	{
+		if (bucket1 == null || bucket2 == null)
+			return;
+
+		// one block for reading the larger bucket and one for the output
+		int smallerBucket = Math.min(bucket1.getBlockCount(), bucket2.getBlockCount());
+		if (smallerBucket <= blockManager.getFreeBlockCount() - 2)
+		{
+			buildAndProbe(bucket1, joinAttribute1, bucket2, joinAttribute2, output);
+		}
+		else if (singleKey || depth > MAX_DEPTH)
+		{
+			// Partitioning again cannot split a bucket with only one key
+			new BlockNestedLoopEquiJoin(blockManager).joinPairs(bucket1, joinAttribute1, bucket2, joinAttribute2, output);
+		}
+		else
+		{
+			// The bucket does not fit into memory: partition it again with an independent hash function
+			int bucketCount = getBucketCount(bucket1, bucket2);
+			String phase = blockManager.markPhase("repartition");
+			HashTable hashTable1 = setupHashTable(bucket1, joinAttribute1, bucketCount, depth, null, null, null);
+			HashTable hashTable2 = setupHashTable(bucket2, joinAttribute2, bucketCount, depth, null, null, null);
+			blockManager.markPhase(phase);
+			joinHashTables(hashTable1, joinAttribute1, hashTable2, joinAttribute2, output, depth + 1);
+		}
+	}
+
+	/**
+	 * Pins the smaller bucket and loads it into a hash table, then streams the
+	 * larger bucket past it.
+	 */
+	protected void buildAndProbe(Relation bucket1, int joinAttribute1, Relation bucket2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output)
+	{
+		boolean swapped = bucket2.getBlockCount() < bucket1.getBlockCount();
+		Relation build = swapped ? bucket2 : bucket1;
+		Relation probe = swapped ? bucket1 : bucket2;
+		int probeAttribute = swapped ? joinAttribute1 : joinAttribute2;
+
+		TupleHashTable hashTable = new TupleHashTable(swapped ? joinAttribute2 : joinAttribute1, 0);
+		for (Block block : build)
+		{
+			blockManager.pin(block);
+			for (Tuple tuple : block)
+				hashTable.add(tuple);
+		}
+
+		for (Block block : probe)
+		{
+			blockManager.pin(block);
+			for (Tuple tuple : block)
+			{
+				if (swapped)
+					hashTable.forEachMatch(tuple.getKey(probeAttribute), match -> output.accept(tuple, match));
+				else
+					hashTable.forEachMatch(tuple.getKey(probeAttribute), match -> output.accept(match, tuple));
+			}
+			blockManager.unpin(block);
+		}
+
+		for (Block block : build)
+			blockManager.unpin(block);
+	}
+
+	private int getBucketCount(Relation relation1, Relation relation2)
+	{
+		return getBucketCount(Math.min(relation1.getBlockCount(), relation2.getBlockCount()),
+				blockManager.getFreeBlockCount());
+	}
+
+	/**
+	 * Chooses the bucket count such that every bucket of the smaller relation is
+	 * expected to fit into memory with {@link #FUDGE_FACTOR} to spare, while every
+	 * bucket can still buffer one block during partitioning.
+	 *
+	 * @param smallerBlocks The number of blocks of the smaller relation.
+	 * @param freeBlocks    The number of free blocks.
+	 * @return the bucket count
+	 */
+	public static int getBucketCount(int smallerBlocks, int freeBlocks)
+	{
+		int bucketCount = (int) Math.ceil(FUDGE_FACTOR * smallerBlocks / Math.max(1, freeBlocks - 2));
+		return Math.max(1, Math.min(freeBlocks - 1, bucketCount));
+	}
+
+	/**
+	 * Returns the number of blocks for the tuples with frequent keys: up to a
+	 * quarter of the free blocks, as long as every bucket can still buffer a block
+	 * while partitioning and one block is left for the output.
+	 */
+	private int getSkewBlocks(int freeBlocks, int bucketCount) {
+		if (!skewAware)
+			return 0;
+		return Math.max(0, Math.min((freeBlocks - 2) / 4, freeBlocks - 2 - bucketCount));
+	}
+
+	/**
+	 * Returns the number of counters of the sketch that detects frequent keys,
+	 * such that a frequent key would take up a quarter of its bucket or more.
+	 */
+	private static int getSketchCapacity(int bucketCount) {
+		return Math.min(MAX_SKETCH_CAPACITY, Math.max(MIN_SKETCH_CAPACITY, 4 * bucketCount));
+	}
+
+	/**
+	 * Returns the values of an attribute that occur more often than once per
+	 * counter of the sketch, according to the statistics of the relation.
+	 */
+	private static Map<String, Long> getFrequentValues(Relation relation, int attribute, int capacity) {
+		RelationStatistics statistics = relation.getStatistics();
+		AttributeStatistics attributeStatistics = statistics == null ? null : statistics.getAttribute(attribute);
+		if (attributeStatistics == null)
+			return Collections.emptyMap();
+		Map<String, Long> frequent = new LinkedHashMap<>();
+		for (Map.Entry<String, Long> entry : attributeStatistics.getHeavyHitters().entrySet()) {
+			if (entry.getValue() * capacity > statistics.getTupleCount())
+				frequent.put(entry.getKey(), entry.getValue());
 		}
+		return frequent;
 	}
 
-	private int getHashValue(Tuple tuple, int joinAttribute, int size)
+	protected int getHashValue(Tuple tuple, int joinAttribute, int size, int depth)
 	{
-		return Math.abs(tuple.getData(joinAttribute).hashCode()) % numBuckets;
+		// every partitioning pass uses a differently seeded hash function, and none
+		// uses the unseeded one of the in-memory hash tables, whose slots would
+		// otherwise be correlated with the bucket
+		return Math.floorMod(tuple.getKey(joinAttribute).hashCode(depth), size);
 	}
 
-	private Relation[] setupHashTable(Relation relation, int joinAttribute, boolean keepPinned){
+	/**
+	 * Partitions a relation into buckets. The keys of the relation are added to
+	 * <tt>keyFilter</tt>, tuples that do not pass <tt>tupleFilter</tt> are dropped
+	 * and tuples that <tt>divert</tt> takes are not written to a bucket, if the
+	 * filters are not <tt>null</tt>.
+	 */
+	private HashTable setupHashTable(Relation relation, int joinAttribute, int bucketCount, int depth,
+			SemiJoinFilter keyFilter, SemiJoinFilter tupleFilter, Predicate<Tuple> divert) {
 		// We have a relation foe every hashValue.
-		Relation[] relationHashTable = new Relation[numBuckets];
+		HashTable hashTable = new HashTable(bucketCount);
+		Relation[] relationHashTable = hashTable.buckets;
 		
 		// Each HashValue buffers maximum one block to add tuples
-		Block[] hashTableForBlocks = new Block[numBuckets];
+		Block[] hashTableForBlocks = new Block[bucketCount];
 
 		for(Block block: relation)
 		{
 			blockManager.pin(block);
+			if (keyFilter != null)
+				keyFilter.add(block);
 			for(Tuple tuple: block)
 			{
-				int hashValue = getHashValue(tuple, joinAttribute, numBuckets);
+				if (tupleFilter != null && !tupleFilter.mightMatch(tuple, joinAttribute))
+					continue;
+				if (divert != null && divert.test(tuple))
+					continue;
+				int hashValue = getHashValue(tuple, joinAttribute, bucketCount, depth);
+				hashTable.addKey(hashValue, tuple.getKey(joinAttribute));
 				if(relationHashTable[hashValue] == null)
 				{
 					// Because no relation exists for this HashValue, we create one
@@ -81,16 +383,282 @@ public class HashEquiJoin implements Join {
 		//unpin all blocks. 
 		for(Block block: hashTableForBlocks)
 		{
-			if (block == null || keepPinned)
+			if (block == null)
 				continue;
 			blockManager.unpin(block);
 		}
+		for (Relation bucket : relationHashTable)
+		{
+			if (bucket != null)
+				blockManager.observe("bucketBlocks", bucket.getBlockCount());
+		}
 
-		return relationHashTable;
+		return hashTable;
 	}
 
 	@Override
 	public int getIOEstimate(Relation relation1, Relation relation2) {
-		return 3 * (relation1.getBlockCount() + relation2.getBlockCount());
+		return getIOEstimate(relation1, -1, relation2, -1);
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		int blocks1 = relation1.getBlockCount();
+		int blocks2 = relation2.getBlockCount();
+		int freeBlocks = Math.max(3, blockManager.getFreeBlockCount());
+		int bucketCount = numBuckets > 0 ? numBuckets
+				: getBucketCount(Math.min(blocks1, blocks2), freeBlocks);
+
+		// only the tuples of the larger relation that pass the filter are written to buckets
+		if (falsePositiveRate > 0 && blocks2 < blocks1)
+			blocks1 = (int) Math.ceil(blocks1
+					* SemiJoinFilter.getPassRate(relation2, joinAttribute2, relation1, joinAttribute1, falsePositiveRate));
+		else if (falsePositiveRate > 0)
+			blocks2 = (int) Math.ceil(blocks2
+					* SemiJoinFilter.getPassRate(relation1, joinAttribute1, relation2, joinAttribute2, falsePositiveRate));
+
+		// the tuples with frequent keys that stay in memory are not written to buckets
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation build = swapped ? relation2 : relation1;
+		Relation probe = swapped ? relation1 : relation2;
+		SkewEstimate skew = new SkewEstimate(build, swapped ? joinAttribute2 : joinAttribute1, probe,
+				swapped ? joinAttribute1 : joinAttribute2, bucketCount, freeBlocks);
+		int buildBlocks = Math.max(0, (swapped ? blocks2 : blocks1) - skew.residentBuildBlocks);
+		int probeBlocks = Math.max(0, (swapped ? blocks1 : blocks2) - skew.streamedProbeBlocks);
+		int blocks = buildBlocks + probeBlocks;
+
+		// every pass that is needed to make the buckets fit writes and reads both relations again
+		int io = relation1.getBlockCount() + relation2.getBlockCount() + 2 * blocks;
+		int smaller = Math.min(buildBlocks, probeBlocks);
+		int bucketBlocks = (smaller + bucketCount - 1) / bucketCount;
+		return io + getRepartitionIO(bucketBlocks, blocks, freeBlocks) + skew.overflowBlocks;
+	}
+
+	/**
+	 * Estimates the IO of partitioning buckets again, until the buckets of the
+	 * smaller relation fit into memory: every pass writes and reads the buckets of
+	 * both relations again.
+	 *
+	 * @param bucketBlocks The blocks of an average bucket of the smaller relation.
+	 * @param blocks       The blocks of the buckets of both relations.
+	 * @param freeBlocks   The number of free blocks.
+	 * @return the IO of all further partitioning passes
+	 */
+	protected static int getRepartitionIO(int bucketBlocks, int blocks, int freeBlocks) {
+		int io = 0;
+		for (int depth = 1; FUDGE_FACTOR * bucketBlocks > freeBlocks - 2 && depth <= MAX_DEPTH; ++depth) {
+			io += 2 * blocks;
+			int repartitioned = getBucketCount(bucketBlocks, freeBlocks);
+			bucketBlocks = (bucketBlocks + repartitioned - 1) / repartitioned;
+		}
+		return io;
+	}
+
+	/**
+	 * Estimates the effect of the frequent keys on the IO of the join from the
+	 * statistics of both relations. The build tuples with frequent keys that fit
+	 * into the skew partition and the probe tuples joined with them are not written
+	 * to buckets. Any other frequent key makes its bucket larger than the others,
+	 * so it may have to be partitioned again, and if its build tuples do not fit
+	 * into memory on their own, its bucket becomes a nested-loop join, which reads
+	 * the probe tuples with the key once per chunk of build blocks.
+	 */
+	private final class SkewEstimate {
+		private int residentBuildBlocks;
+		private int streamedProbeBlocks;
+		private int overflowBlocks;
+
+		private SkewEstimate(Relation build, int buildAttribute, Relation probe, int probeAttribute, int bucketCount,
+				int freeBlocks) {
+			RelationStatistics buildStatistics = build.getStatistics();
+			RelationStatistics probeStatistics = probe.getStatistics();
+			AttributeStatistics buildAttributeStatistics = buildStatistics == null ? null
+					: buildStatistics.getAttribute(buildAttribute);
+			AttributeStatistics probeAttributeStatistics = probeStatistics == null ? null
+					: probeStatistics.getAttribute(probeAttribute);
+			if (buildAttributeStatistics == null || probeAttributeStatistics == null || build.getBlockCount() == 0
+					|| probe.getBlockCount() == 0)
+				return;
+
+			int capacity = getSketchCapacity(bucketCount);
+			Map<String, Long> buildFrequent = getFrequentValues(build, buildAttribute, capacity);
+			Map<String, Long> probeFrequent = getFrequentValues(probe, probeAttribute, capacity);
+			Set<String> keys = new LinkedHashSet<>(buildFrequent.keySet());
+			keys.addAll(probeFrequent.keySet());
+
+			double buildTuplesPerBlock = Math.max(1.0, (double) buildStatistics.getTupleCount() / build.getBlockCount());
+			double probeTuplesPerBlock = Math.max(1.0, (double) probeStatistics.getTupleCount() / probe.getBlockCount());
+			double buildTuplesPerKey = (double) buildStatistics.getTupleCount()
+					/ buildAttributeStatistics.getDistinctCount();
+			double probeTuplesPerKey = (double) probeStatistics.getTupleCount()
+					/ probeAttributeStatistics.getDistinctCount();
+
+			double[] buildTuples = new double[keys.size()];
+			double[] probeTuples = new double[keys.size()];
+			double frequentBuild = 0;
+			double frequentProbe = 0;
+			int k = 0;
+			for (String key : keys) {
+				buildTuples[k] = buildFrequent.containsKey(key) ? buildFrequent.get(key) : buildTuplesPerKey;
+				probeTuples[k] = probeFrequent.containsKey(key) ? probeFrequent.get(key) : probeTuplesPerKey;
+				frequentBuild += buildTuples[k] / buildTuplesPerBlock;
+				frequentProbe += probeTuples[k] / probeTuplesPerBlock;
+				k++;
+			}
+			// the size of a bucket without frequent keys
+			double averageBuildBucket = Math.max(0, build.getBlockCount() - frequentBuild) / bucketCount;
+			double averageProbeBucket = Math.max(0, probe.getBlockCount() - frequentProbe) / bucketCount;
+
+			double resident = getSkewBlocks(freeBlocks, bucketCount) * buildTuplesPerBlock;
+			double residentBuild = 0;
+			double streamedProbe = 0;
+			double overflow = 0;
+			for (k = 0; k < buildTuples.length; ++k) {
+				if (buildTuples[k] <= resident) {
+					resident -= buildTuples[k];
+					residentBuild += buildTuples[k] / buildTuplesPerBlock;
+					streamedProbe += probeTuples[k] / probeTuplesPerBlock;
+				} else {
+					double keyBlocks = buildTuples[k] / buildTuplesPerBlock;
+					double probeKeyBlocks = probeTuples[k] / probeTuplesPerBlock;
+					// buckets of average size that do not fit are already partitioned again
+					if (averageBuildBucket <= freeBlocks - 2 && averageBuildBucket + keyBlocks > freeBlocks - 2)
+						overflow += 2 * (averageBuildBucket + keyBlocks + averageProbeBucket + probeKeyBlocks);
+					int chunks = (int) Math.ceil(keyBlocks / Math.max(1, freeBlocks - 2));
+					if (chunks > 1)
+						overflow += (chunks - 1) * probeKeyBlocks;
+				}
+			}
+			residentBuildBlocks = (int) residentBuild;
+			streamedProbeBlocks = (int) streamedProbe;
+			overflowBlocks = (int) Math.ceil(overflow);
+		}
+	}
+
+	/**
+	 * The tuples of the build relation, the smaller one, with frequent keys. They
+	 * stay pinned in memory while the probe relation is partitioned, and the probe
+	 * tuples with these keys are joined with them right away instead of being
+	 * written to a bucket. The frequent keys are taken from the statistics of both
+	 * relations, and detected with a {@link HeavyHitterSketch} while the build
+	 * relation is partitioned.
+	 *
+	 * Build tuples that come before their key is detected, or that do not fit into
+	 * the skew partition, stay in their buckets, so the probe tuples with their key
+	 * are written to their buckets as well.
+	 */
+	private final class SkewPartition {
+		private final int buildAttribute;
+		private final int probeAttribute;
+		private final int maxBlocks;
+		private final boolean swapped;
+		private final BiConsumer<Tuple, Tuple> output;
+
+		private final HeavyHitterSketch<JoinKey> sketch;
+		private final int capacity;
+		private final Set<JoinKey> frequentKeys = new HashSet<>();
+		// the frequent keys that have build tuples in a bucket
+		private final Set<JoinKey> spilledKeys = new HashSet<>();
+		private final TupleHashTable hashTable;
+		private final Relation resident = new Relation(true);
+		private Block block;
+
+		private SkewPartition(Relation build, int buildAttribute, Relation probe, int probeAttribute, int bucketCount,
+				int maxBlocks, boolean swapped, BiConsumer<Tuple, Tuple> output) {
+			this.buildAttribute = buildAttribute;
+			this.probeAttribute = probeAttribute;
+			this.maxBlocks = maxBlocks;
+			this.swapped = swapped;
+			this.output = output;
+			this.capacity = getSketchCapacity(bucketCount);
+			this.sketch = new HeavyHitterSketch<>(capacity);
+			this.hashTable = new TupleHashTable(buildAttribute, 0);
+			for (String value : getFrequentValues(build, buildAttribute, capacity).keySet())
+				frequentKeys.add(JoinKey.of(value));
+			for (String value : getFrequentValues(probe, probeAttribute, capacity).keySet())
+				frequentKeys.add(JoinKey.of(value));
+		}
+
+		/**
+		 * Keeps a build tuple in memory, if its key is frequent and it still fits.
+		 */
+		private boolean build(Tuple tuple) {
+			JoinKey key = tuple.getKey(buildAttribute);
+			sketch.add(key);
+			if (!frequentKeys.contains(key)) {
+				if (sketch.getTotal() < capacity || !sketch.isHeavyHitter(key))
+					return false;
+				// the key was not known to be frequent, its earlier tuples are in a bucket
+				frequentKeys.add(key);
+				spilledKeys.add(key);
+			}
+			if (block == null || !block.addTuple(tuple)) {
+				if (resident.getBlockCount() >= maxBlocks) {
+					spilledKeys.add(key);
+					return false;
+				}
+				block = resident.getFreeBlock(blockManager);
+				blockManager.pin(block);
+				block.addTuple(tuple);
+			}
+			hashTable.add(tuple);
+			return true;
+		}
+
+		/**
+		 * Joins a probe tuple with a frequent key with the build tuples in memory.
+		 * The tuple only has to be written to its bucket, if build tuples with its
+		 * key are there, too.
+		 */
+		private boolean probe(Tuple tuple) {
+			JoinKey key = tuple.getKey(probeAttribute);
+			if (!frequentKeys.contains(key))
+				return false;
+			if (swapped)
+				hashTable.forEachMatch(key, match -> output.accept(tuple, match));
+			else
+				hashTable.forEachMatch(key, match -> output.accept(match, tuple));
+			return !spilledKeys.contains(key);
+		}
+
+		/**
+		 * Unpins the blocks of the build tuples, once the probe relation is
+		 * partitioned.
+		 */
+		private void release() {
+			blockManager.observe("skewBlocks", resident.getBlockCount());
+			blockManager.observe("frequentKeys", frequentKeys.size());
+			// the content of in-memory blocks is lost once they are unpinned
+			for (Block residentBlock : resident)
+				blockManager.unpin(residentBlock);
+			hashTable.clear();
+		}
+	}
+
+	/**
+	 * The buckets of one partitioning pass, together with the information, whether
+	 * a bucket only contains tuples with one and the same key.
+	 */
+	private static final class HashTable {
+		private final Relation[] buckets;
+		private final JoinKey[] keys;
+		private final boolean[] mixedKeys;
+
+		private HashTable(int numBuckets) {
+			this.buckets = new Relation[numBuckets];
+			this.keys = new JoinKey[numBuckets];
+			this.mixedKeys = new boolean[numBuckets];
+		}
+
+		private void addKey(int bucket, JoinKey key) {
+			if (keys[bucket] == null)
+				keys[bucket] = key;
+			else if (!mixedKeys[bucket] && !keys[bucket].equals(key))
+				mixedKeys[bucket] = true;
+		}
+
+		private boolean isSingleKey(int bucket) {
+			return keys[bucket] != null && !mixedKeys[bucket];
+		}
 	}
 }
@@ -0,0 +1,232 @@
+package join.algorithms;
+
+import java.util.function.BiConsumer;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
+import join.helper.PinningOutputTarget;
+import join.manager.BlockManager;
+
+/**
+ * Hybrid hash join. The number of partitions is derived from the free blocks of
+ * the block manager. Partition 0 of the build side (the smaller relation) stays
+ * resident in in-memory blocks and is probed directly while the probe side is
+ * partitioned, only the other partitions are written to disk and joined
+ * afterwards.
+ *
+ * Partition 0 and the spilled partitions are planned with
+ * {@link HashEquiJoin#FUDGE_FACTOR} to spare, so that the variance of the hash
+ * function does not make them overflow.
+ *
+ * If partition 0 turns out to be larger than the memory reserved for it, the
+ * remaining tuples of partition 0 are spilled to disk as well and the probe
+ * tuples of partition 0 are spilled a second time to be joined with them.
+ */
+public class HybridHashEquiJoin extends HashEquiJoin {
+
+	public HybridHashEquiJoin(BlockManager blockManager) {
+		super(0, 0, false, blockManager);
+	}
+
+	@Override
+	protected void joinPairs(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output) {
+
+		// use smaller relation as build relation
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation build = swapped ? relation2 : relation1;
+		Relation probe = swapped ? relation1 : relation2;
+		int buildAttribute = swapped ? joinAttribute2 : joinAttribute1;
+		int probeAttribute = swapped ? joinAttribute1 : joinAttribute2;
+
+		Partitioning partitioning = new Partitioning(build.getBlockCount(), blockManager.getFreeBlockCount());
+
+		// partitions on disk, index 0 only receives the overflow of partition 0
+		Relation[] buildPartitions = new Relation[partitioning.spilled + 1];
+		Relation[] probePartitions = new Relation[partitioning.spilled + 1];
+
+		// build phase: keep partition 0 resident and spill the others
+		blockManager.markPhase("build");
+		Relation resident = new Relation(true);
+		TupleHashTable residentTable = new TupleHashTable(buildAttribute, 0);
+		Block residentBlock = null;
+		PinningOutputTarget[] targets = new PinningOutputTarget[partitioning.spilled + 1];
+		for (Block block : build) {
+			blockManager.pin(block);
+			for (Tuple tuple : block) {
+				int partition = partitioning.getPartition(tuple.getKey(buildAttribute));
+				if (partition == 0 && buildPartitions[0] == null) {
+					if (residentBlock == null || !residentBlock.addTuple(tuple)) {
+						residentBlock = null;
+						// one free block is reserved for every spill target that is not opened yet
+						if (blockManager.getFreeBlockCount() - countUnopened(targets) > 0) {
+							residentBlock = resident.getFreeBlock(blockManager);
+							blockManager.pin(residentBlock);
+							residentBlock.addTuple(tuple);
+						}
+					}
+					if (residentBlock != null) {
+						residentTable.add(tuple);
+						continue;
+					}
+				}
+				spill(targets, buildPartitions, partition, tuple);
+			}
+			blockManager.unpin(block);
+		}
+		closeAll(targets);
+
+		// probe phase: probe partition 0 straight away and spill the others
+		blockManager.observe("residentBlocks", resident.getBlockCount());
+		for (Relation partition : buildPartitions) {
+			if (partition != null)
+				blockManager.observe("bucketBlocks", partition.getBlockCount());
+		}
+		blockManager.markPhase("probe");
+		boolean overflow = buildPartitions[0] != null;
+		targets = new PinningOutputTarget[partitioning.spilled + 1];
+		for (Block block : probe) {
+			blockManager.pin(block);
+			for (Tuple tuple : block) {
+				int partition = partitioning.getPartition(tuple.getKey(probeAttribute));
+				if (partition == 0) {
+					if (swapped)
+						residentTable.forEachMatch(tuple.getKey(probeAttribute), match -> output.accept(tuple, match));
+					else
+						residentTable.forEachMatch(tuple.getKey(probeAttribute), match -> output.accept(match, tuple));
+					if (!overflow)
+						continue;
+				}
+				if (buildPartitions[partition] != null) {
+					spill(targets, probePartitions, partition, tuple);
+				}
+			}
+			blockManager.unpin(block);
+		}
+		closeAll(targets);
+
+		// the content of in-memory blocks is lost once they are unpinned
+		for (Block block : resident) {
+			blockManager.unpin(block);
+		}
+
+		blockManager.markPhase("spilled");
+		for (int i = 0; i < buildPartitions.length; ++i) {
+			if (swapped) {
+				joinBuckets(probePartitions[i], joinAttribute1, buildPartitions[i], joinAttribute2, output);
+			} else {
+				joinBuckets(buildPartitions[i], joinAttribute1, probePartitions[i], joinAttribute2, output);
+			}
+		}
+	}
+
+	private void spill(PinningOutputTarget[] targets, Relation[] partitions, int partition, Tuple tuple) {
+		if (targets[partition] == null) {
+			partitions[partition] = new Relation();
+			targets[partition] = new PinningOutputTarget(partitions[partition], blockManager);
+		}
+		targets[partition].addTuple(tuple);
+	}
+
+	private static int countUnopened(PinningOutputTarget[] targets) {
+		int count = 0;
+		for (PinningOutputTarget target : targets) {
+			if (target == null)
+				count++;
+		}
+		return count;
+	}
+
+	private static void closeAll(PinningOutputTarget[] targets) {
+		for (PinningOutputTarget target : targets) {
+			if (target != null)
+				target.close();
+		}
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		return getIOEstimate(relation1, relation2);
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, Relation relation2) {
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation build = swapped ? relation2 : relation1;
+		Relation probe = swapped ? relation1 : relation2;
+
+		int freeBlocks = Math.max(4, blockManager.getFreeBlockCount());
+		Partitioning partitioning = new Partitioning(build.getBlockCount(), freeBlocks);
+		int buildBlocks = build.getBlockCount();
+		int spilledBuild = Math.max(0, buildBlocks - partitioning.resident);
+		int spilledProbe = buildBlocks == 0 ? 0
+				: (int) Math.ceil((double) probe.getBlockCount() * spilledBuild / buildBlocks);
+
+		// both relations are read once, spilled partitions are written and read again,
+		// and partitioned again, if they do not fit into memory
+		int io = buildBlocks + probe.getBlockCount() + 2 * (spilledBuild + spilledProbe);
+		if (partitioning.spilled > 0) {
+			int partitionBlocks = (spilledBuild + partitioning.spilled - 1) / partitioning.spilled;
+			io += getRepartitionIO(partitionBlocks, spilledBuild + spilledProbe, freeBlocks);
+		}
+		return io;
+	}
+
+	/**
+	 * Partition layout of a hybrid hash join: the number of resident build blocks
+	 * and the number of partitions that are spilled to disk.
+	 */
+	private static final class Partitioning {
+
+		private final int buildBlocks;
+		private final int resident;
+		private final int spilled;
+
+		private Partitioning(int buildBlocks, int freeBlocks) {
+			if (freeBlocks < 4) {
+				throw new IllegalStateException("hybrid hash join needs at least four free blocks");
+			}
+			this.buildBlocks = buildBlocks;
+
+			// one block for reading the input and one reserved for the overflow of partition 0
+			if (buildBlocks <= freeBlocks - 2) {
+				this.spilled = 0;
+				this.resident = freeBlocks - 2;
+				return;
+			}
+
+			// partitions are hashed, so partition 0 is planned with the fudge factor to
+			// spare, and every spilled partition should fit into memory the same way,
+			// when it is joined later on
+			int spilledPartitions = 1;
+			while (true) {
+				int residentBlocks = getResidentBlocks(freeBlocks, spilledPartitions);
+				int needed = (int) Math.ceil(FUDGE_FACTOR * (buildBlocks - residentBlocks) / (freeBlocks - 2));
+				if (needed <= spilledPartitions || spilledPartitions == freeBlocks - 3)
+					break;
+				spilledPartitions = Math.min(freeBlocks - 3, needed);
+			}
+			this.spilled = spilledPartitions;
+			this.resident = getResidentBlocks(freeBlocks, spilled);
+		}
+
+		private static int getResidentBlocks(int freeBlocks, int spilled) {
+			return (int) ((freeBlocks - 2 - spilled) / FUDGE_FACTOR);
+		}
+
+		private int getPartition(JoinKey key) {
+			if (spilled == 0)
+				return 0;
+			// seeded like the first partitioning pass of the hash join, independent of
+			// the hash code the resident hash table uses
+			int hash = key.hashCode(0);
+			int slot = (int) (((hash & 0xFFFFFFFFL) * buildBlocks) >>> 32);
+			if (slot < resident)
+				return 0;
+			return 1 + (slot - resident) * spilled / (buildBlocks - resident);
+		}
+	}
+}
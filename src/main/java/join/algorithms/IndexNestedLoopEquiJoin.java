@@ -0,0 +1,164 @@
+package join.algorithms;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.RelationStatistics.AttributeStatistics;
+import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
+import join.index.Index;
+import join.manager.BlockManager;
+
+/**
+ * Index nested-loop join that probes an index on the join attribute of one
+ * relation with the keys of the other relation. Like the block nested-loop join,
+ * it pins chunks of outer blocks and builds a hash table on their tuples. It
+ * then looks up the distinct keys of the chunk in the index and reads only the
+ * indexed blocks that hold one of them, each once per chunk and in block order.
+ *
+ * This pays off for selective joins against a large indexed relation. The
+ * index has to be built on one of the joined relations beforehand.
+ */
+public class IndexNestedLoopEquiJoin implements Join {
+
+	private final Index index;
+	private final BlockManager blockManager;
+
+	/**
+	 * Constructs an index nested-loop join.
+	 *
+	 * @param index        The index on the inner relation.
+	 * @param blockManager The block manager to use.
+	 */
+	public IndexNestedLoopEquiJoin(Index index, BlockManager blockManager) {
+		this.index = index;
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			Consumer<Tuple> consumer) {
+
+		// the indexed relation is the inner relation
+		boolean swapped = !isIndexed(relation2, joinAttribute2);
+		if (swapped && !isIndexed(relation1, joinAttribute1)) {
+			throw new IllegalArgumentException("no index on the join attributes of the relations");
+		}
+		Relation outer = swapped ? relation2 : relation1;
+		Relation inner = swapped ? relation1 : relation2;
+		int outerAttribute = swapped ? joinAttribute2 : joinAttribute1;
+		int innerAttribute = swapped ? joinAttribute1 : joinAttribute2;
+
+		int chunkSize = getChunkSize();
+		List<Block> chunk = new ArrayList<>(chunkSize);
+		TupleHashTable hashTable = new TupleHashTable(outerAttribute, 0);
+		Set<JoinKey> keys = new HashSet<>();
+		BitSet matchingBlocks = new BitSet(inner.getBlockCount());
+
+		Iterator<Block> outerBlocks = outer.iterator();
+		while (outerBlocks.hasNext()) {
+			// pin the next chunk of outer blocks and hash their tuples
+			blockManager.markPhase("chunk");
+			while (chunk.size() < chunkSize && outerBlocks.hasNext()) {
+				Block block = outerBlocks.next();
+				blockManager.pin(block);
+				chunk.add(block);
+				for (Tuple tuple : block) {
+					hashTable.add(tuple);
+					keys.add(tuple.getKey(outerAttribute));
+				}
+			}
+
+			// look up every key of the chunk once
+			blockManager.markPhase("lookup");
+			for (JoinKey key : keys) {
+				for (int position : index.lookup(key)) {
+					matchingBlocks.set(position);
+				}
+			}
+
+			// read the inner blocks that hold a key of the chunk
+			blockManager.observe("matchingBlocks", matchingBlocks.cardinality());
+			blockManager.markPhase("probe");
+			for (int b = matchingBlocks.nextSetBit(0); b >= 0; b = matchingBlocks.nextSetBit(b + 1)) {
+				Block innerBlock = inner.getBlock(b);
+				blockManager.pin(innerBlock);
+				for (Tuple innerTuple : innerBlock) {
+					hashTable.forEachMatch(innerTuple.getKey(innerAttribute), outerTuple -> consumer.accept(swapped
+							? Join.joinTuple(innerTuple, joinAttribute1, outerTuple, joinAttribute2)
+							: Join.joinTuple(outerTuple, joinAttribute1, innerTuple, joinAttribute2)));
+				}
+				blockManager.unpin(innerBlock);
+			}
+
+			for (Block block : chunk) {
+				blockManager.unpin(block);
+			}
+			chunk.clear();
+			hashTable.clear();
+			keys.clear();
+			matchingBlocks.clear();
+		}
+	}
+
+	private boolean isIndexed(Relation relation, int joinAttribute) {
+		return relation == index.getRelation() && (joinAttribute < 0 || joinAttribute == index.getAttribute());
+	}
+
+	/**
+	 * Returns the number of outer blocks to pin at once: all free blocks but two,
+	 * one for the index or inner block and one for the consumer's output.
+	 */
+	private int getChunkSize() {
+		return Math.max(1, blockManager.getFreeBlockCount() - 2);
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, Relation relation2) {
+		return getIOEstimate(relation1, -1, relation2, -1);
+	}
+
+	/**
+	 * Estimates the IO from the number of distinct outer keys per chunk, from the
+	 * statistics of the outer relation, if present. Otherwise every key of the
+	 * index is assumed to be looked up once. Every key is assumed to be in the
+	 * index.
+	 */
+	@Override
+	public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		boolean swapped = !isIndexed(relation2, joinAttribute2);
+		if (swapped && !isIndexed(relation1, joinAttribute1))
+			return Integer.MAX_VALUE;
+		Relation outer = swapped ? relation2 : relation1;
+		Relation inner = swapped ? relation1 : relation2;
+		int outerAttribute = swapped ? joinAttribute2 : joinAttribute1;
+
+		int chunkSize = getChunkSize();
+		int chunks = (outer.getBlockCount() + chunkSize - 1) / chunkSize;
+		if (chunks == 0)
+			return 0;
+
+		double keysPerChunk = (double) index.getKeyCount() / chunks;
+		RelationStatistics statistics = outer.getStatistics();
+		AttributeStatistics attribute = statistics == null ? null : statistics.getAttribute(outerAttribute);
+		if (attribute != null) {
+			keysPerChunk = Math.min(attribute.getDistinctCount(), (double) statistics.getTupleCount() / chunks);
+		}
+
+		double blocksPerKey = index.getKeyCount() == 0 ? 0 : (double) index.getEntryCount() / index.getKeyCount();
+		double matchingKeys = Math.min(keysPerChunk, index.getKeyCount());
+		double innerBlocks = Math.min(inner.getBlockCount(), matchingKeys * blocksPerKey);
+		double estimate = outer.getBlockCount()
+				+ chunks * (keysPerChunk * index.getLookupIOEstimate() + innerBlocks);
+		return (int) Math.min(Integer.MAX_VALUE, Math.ceil(estimate));
+	}
+}
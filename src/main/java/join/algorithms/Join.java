@@ -1,6 +1,5 @@
 package join.algorithms;
 
-import java.util.Objects;
 import java.util.function.Consumer;
 
 import join.datastructures.Relation;
@@ -10,28 +9,47 @@ public interface Join {
 
 	void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2, Consumer<Tuple> consumer);
 
+	/**
+	 * Joins the relations and hands the results to the sink in batches of tuple
+	 * pairs, so that no result tuple has to be built. The default collects the
+	 * results of {@link #join(Relation, int, Relation, int, Consumer)} in a
+	 * {@link JoinBatch}.
+	 */
+	default void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2, JoinSink sink) {
+		JoinBatch batch = new JoinBatch(sink);
+		join(relation1, joinAttribute1, relation2, joinAttribute2, batch);
+		batch.flush();
+	}
+
 	int getIOEstimate(Relation relation1, Relation relation2);
 
+	/**
+	 * Estimates the IO costs of joining the relations on the given attributes.
+	 * Algorithms whose costs depend on the data can use the statistics of the
+	 * relations, the default ignores the attributes.
+	 */
+	default int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		return getIOEstimate(relation1, relation2);
+	}
+
 	static void joinTuples(Iterable<Tuple> leftBlock, int joinAttribute1, Iterable<Tuple> rightBlock,
 			int joinAttribute2, Consumer<Tuple> consumer) {
 		for (Tuple t1 : leftBlock) {
 			for (Tuple t2 : rightBlock) {
 				// join-condition satisfied?
-				if (Objects.equals(t1.getData(joinAttribute1), t2.getData(joinAttribute2))) {
+				if (t1.getKey(joinAttribute1).equals(t2.getKey(joinAttribute2))) {
 					consumer.accept(Join.joinTuple(t1, joinAttribute1, t2, joinAttribute2));
 				}
 			}
 		}
 	}
 
+	/**
+	 * Returns the result of joining two tuples, a view of their attributes that
+	 * copies them only if it is {@link Tuple#materialize() materialized}, like
+	 * blocks do when the tuple is written into them.
+	 */
 	static Tuple joinTuple(Tuple t1, int joinAttribute1, Tuple t2, int joinAttribute2) {
-		String[] data = new String[t1.getAttributeCount() + t2.getAttributeCount()];
-
-		int pos = 0;
-		for (int i = 0; i < t1.getAttributeCount(); ++i)
-			data[pos++] = t1.getData(i);
-		for (int i = 0; i < t2.getAttributeCount(); ++i)
-			data[pos++] = t2.getData(i);
-		return new Tuple(data);
+		return Tuple.concat(t1, t2);
 	}
 }
@@ -0,0 +1,82 @@
+package join.algorithms;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import join.datastructures.Tuple;
+
+/**
+ * Collects the results of a join into batches of tuple pairs and hands every
+ * full batch to a {@link JoinSink}. As a consumer, it takes the results of
+ * {@link Join#joinTuple(Tuple, int, Tuple, int)} apart into their pair again,
+ * without copying attributes. Results that are no concatenations are passed on
+ * with an empty right tuple.
+ *
+ * A batch is not thread-safe, and {@link #flush()} has to be called after the
+ * last result.
+ */
+public final class JoinBatch implements Consumer<Tuple> {
+
+	public static final int DEFAULT_SIZE = 1024;
+
+	private static final Tuple EMPTY = Tuple.wrap(new String[0]);
+
+	private final JoinSink sink;
+	private final Tuple[] left;
+	private final Tuple[] right;
+	private int count;
+
+	public JoinBatch(JoinSink sink) {
+		this(sink, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Constructs a batch.
+	 *
+	 * @param sink The sink to hand the batches to.
+	 * @param size The number of results per batch.
+	 */
+	public JoinBatch(JoinSink sink, int size) {
+		if (size < 1)
+			throw new IllegalArgumentException("batch size must be positive: " + size);
+		this.sink = Objects.requireNonNull(sink, "sink must not be null");
+		this.left = new Tuple[size];
+		this.right = new Tuple[size];
+	}
+
+	@Override
+	public void accept(Tuple tuple) {
+		if (tuple.isConcatenation()) {
+			add(tuple.getLeft(), tuple.getRight());
+		} else {
+			add(tuple, EMPTY);
+		}
+	}
+
+	/**
+	 * Adds a result to the batch, and hands the batch to the sink if it is full.
+	 *
+	 * @param t1 The tuple of the first relation.
+	 * @param t2 The matching tuple of the second relation.
+	 */
+	public void add(Tuple t1, Tuple t2) {
+		left[count] = t1;
+		right[count] = t2;
+		if (++count == left.length)
+			flush();
+	}
+
+	/**
+	 * Hands the results collected so far to the sink.
+	 */
+	public void flush() {
+		if (count == 0)
+			return;
+		sink.accept(left, right, count);
+		// do not keep the tuples of the batch alive
+		Arrays.fill(left, 0, count, null);
+		Arrays.fill(right, 0, count, null);
+		count = 0;
+	}
+}
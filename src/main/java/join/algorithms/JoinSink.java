@@ -0,0 +1,42 @@
+package join.algorithms;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import join.datastructures.Tuple;
+
+/**
+ * Receives the results of a join in batches of tuple pairs, see
+ * {@link Join#join(join.datastructures.Relation, int, join.datastructures.Relation, int, JoinSink)}.
+ * Result <tt>i</tt> of a batch is the concatenation of <tt>left[i]</tt> and
+ * <tt>right[i]</tt>, which is never built unless the sink asks for it.
+ */
+@FunctionalInterface
+public interface JoinSink {
+
+	/**
+	 * Receives a batch of results. The arrays are reused for the next batch, so
+	 * the sink must not keep them, but it can keep the tuples.
+	 *
+	 * @param left  The tuples of the first relation.
+	 * @param right The matching tuples of the second relation.
+	 * @param count The number of results in the batch, the arrays may be longer.
+	 */
+	void accept(Tuple[] left, Tuple[] right, int count);
+
+	/**
+	 * Adapts a consumer of result tuples, which receives every result as a
+	 * {@link Tuple#concat(Tuple, Tuple) concatenation} of the pair.
+	 *
+	 * @param consumer the consumer of the results
+	 * @return a sink that passes the results to the consumer
+	 */
+	static JoinSink of(Consumer<Tuple> consumer) {
+		Objects.requireNonNull(consumer, "consumer must not be null");
+		return (left, right, count) -> {
+			for (int i = 0; i < count; ++i) {
+				consumer.accept(Tuple.concat(left[i], right[i]));
+			}
+		};
+	}
+}
@@ -5,6 +5,7 @@ import java.util.function.Consumer;
 import join.datastructures.Block;
 import join.datastructures.Relation;
 import join.datastructures.Tuple;
+import join.helper.ReadAheadBlockIterator;
 import join.manager.BlockManager;
 
 public class NestedLoopEquiJoin implements Join {
@@ -24,13 +25,17 @@ public class NestedLoopEquiJoin implements Join {
 		Relation outer = swapped ? relation2 : relation1;
 		Relation inner = swapped ? relation1 : relation2;
 
+		blockManager.markPhase("scan");
 		for (Block leftBlock : outer) {
 			blockManager.pin(leftBlock);
-			for (Block rightBlock : inner) {
-				blockManager.pin(rightBlock);
-				Join.joinTuples(swapped ? rightBlock : leftBlock, joinAttribute1, swapped ? leftBlock : rightBlock,
-						joinAttribute2, consumer);
-				blockManager.unpin(rightBlock);
+			// the next inner blocks are read while the current one is joined, one block is left for the output
+			try (ReadAheadBlockIterator rightBlocks = new ReadAheadBlockIterator(inner.iterator(), blockManager, 1)) {
+				while (rightBlocks.hasNext()) {
+					Block rightBlock = rightBlocks.next();
+					Join.joinTuples(swapped ? rightBlock : leftBlock, joinAttribute1,
+							swapped ? leftBlock : rightBlock, joinAttribute2, consumer);
+					blockManager.unpin(rightBlock);
+				}
 			}
 			blockManager.unpin(leftBlock);
 		}
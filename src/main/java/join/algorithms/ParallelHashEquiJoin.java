@@ -0,0 +1,223 @@
+package join.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import com.google.common.collect.Lists;
+
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * Hash join that partitions and joins on a fork-join pool. Input blocks are
+ * handed out to the workers one at a time, every worker buffers its own output
+ * block per bucket. Bucket pairs are then joined concurrently.
+ *
+ * The free blocks but one, which is left to the consumer of the results, are
+ * split evenly between the workers, so the maximum number of pinned blocks is
+ * never exceeded. Bucket pairs that do not fit into the share
+ * of one worker are joined afterwards one after another with the whole buffer
+ * pool, like in {@link HashEquiJoin}.
+ */
+public class ParallelHashEquiJoin extends HashEquiJoin {
+
+	private static final int OUTPUT_BATCH_SIZE = 1024;
+
+	private final int parallelism;
+
+	public ParallelHashEquiJoin(int parallelism, BlockManager blockManager) {
+		super(0, 0, false, blockManager);
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+	}
+
+	@Override
+	protected void joinPairs(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			BiConsumer<Tuple, Tuple> output) {
+		int freeBlocks = blockManager.getFreeBlockCount();
+		int workers = getWorkers(freeBlocks);
+		int share = getShare(freeBlocks);
+		int bucketCount = getBucketCount(relation1, relation2, freeBlocks);
+		int partitionWorkers = getPartitionWorkers(workers, bucketCount, freeBlocks);
+
+		ForkJoinPool pool = new ForkJoinPool(workers);
+		try {
+			blockManager.markPhase("partition");
+			Relation[] buckets1 = partition(pool, partitionWorkers, relation1, joinAttribute1, bucketCount);
+			Relation[] buckets2 = partition(pool, partitionWorkers, relation2, joinAttribute2, bucketCount);
+
+			List<Integer> parallelBuckets = new ArrayList<>();
+			List<Integer> deferredBuckets = new ArrayList<>();
+			for (int i = 0; i < bucketCount; ++i) {
+				int smallerBucket = Math.min(buckets1[i].getBlockCount(), buckets2[i].getBlockCount());
+				if (smallerBucket == 0)
+					continue;
+				if (smallerBucket <= share - 1) {
+					parallelBuckets.add(i);
+				} else {
+					deferredBuckets.add(i);
+				}
+			}
+
+			blockManager.markPhase("probe");
+			Object outputLock = new Object();
+			AtomicInteger next = new AtomicInteger();
+			runWorkers(pool, workers, () -> {
+				// results are handed to the output in batches to keep the lock uncontended
+				JoinBatch batch = new JoinBatch((left, right, count) -> {
+					synchronized (outputLock) {
+						for (int j = 0; j < count; ++j)
+							output.accept(left[j], right[j]);
+					}
+				}, OUTPUT_BATCH_SIZE);
+				int i;
+				while ((i = next.getAndIncrement()) < parallelBuckets.size()) {
+					int bucket = parallelBuckets.get(i);
+					buildAndProbe(buckets1[bucket], joinAttribute1, buckets2[bucket], joinAttribute2, batch::add);
+				}
+				batch.flush();
+			});
+
+			for (int bucket : deferredBuckets) {
+				joinBuckets(buckets1[bucket], joinAttribute1, buckets2[bucket], joinAttribute2, output);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the number of workers: every worker needs at least one block to
+	 * build from and one to probe with, besides the block of the consumer.
+	 */
+	private int getWorkers(int freeBlocks) {
+		return Math.max(1, Math.min(parallelism, (freeBlocks - 1) / 2));
+	}
+
+	/**
+	 * Returns the number of blocks every worker may pin while joining buckets,
+	 * after one block is left to the consumer.
+	 */
+	private int getShare(int freeBlocks) {
+		return (freeBlocks - 1) / getWorkers(freeBlocks);
+	}
+
+	/**
+	 * Chooses the bucket count such that every bucket of the smaller relation is
+	 * expected to fit into the share of one worker with {@link #FUDGE_FACTOR} to
+	 * spare.
+	 */
+	private int getBucketCount(Relation relation1, Relation relation2, int freeBlocks) {
+		int share = getShare(freeBlocks);
+		int smaller = Math.min(relation1.getBlockCount(), relation2.getBlockCount());
+		int bucketCount = (int) Math.ceil(FUDGE_FACTOR * smaller / Math.max(1, share - 1));
+		return Math.max(1, Math.min(freeBlocks - 1, bucketCount));
+	}
+
+	/**
+	 * Returns the number of partitioning workers: every one buffers one block per
+	 * bucket and reads one block.
+	 */
+	private static int getPartitionWorkers(int workers, int bucketCount, int freeBlocks) {
+		return Math.max(1, Math.min(workers, freeBlocks / (bucketCount + 1)));
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		return getIOEstimate(relation1, relation2);
+	}
+
+	/**
+	 * Estimates the IO of one partitioning pass with the partial last blocks of
+	 * every partitioning worker, and of partitioning again the buckets that do not
+	 * fit into the whole buffer pool either. Neither a filter nor frequent keys are
+	 * taken into account, as the join uses neither.
+	 */
+	@Override
+	public int getIOEstimate(Relation relation1, Relation relation2) {
+		int freeBlocks = Math.max(3, blockManager.getFreeBlockCount());
+		int workers = getWorkers(freeBlocks);
+		int bucketCount = getBucketCount(relation1, relation2, freeBlocks);
+		int partitionWorkers = getPartitionWorkers(workers, bucketCount, freeBlocks);
+
+		int blocks = relation1.getBlockCount() + relation2.getBlockCount();
+		// every further worker that reads a block of a relation leaves a partial
+		// block in every bucket
+		int partialBlocks = 0;
+		for (Relation relation : new Relation[] { relation1, relation2 }) {
+			int readers = Math.min(partitionWorkers, relation.getBlockCount());
+			partialBlocks += Math.max(0, readers - 1) * Math.min(bucketCount, relation.getBlockCount());
+		}
+		int bucketBlocks = blocks + partialBlocks;
+		int smaller = Math.min(relation1.getBlockCount(), relation2.getBlockCount());
+		int smallerBucketBlocks = (smaller + bucketCount - 1) / bucketCount;
+
+		// both relations are read, and written and read again as buckets, which are
+		// only partitioned again, if they fit neither into the share of a worker nor
+		// into the whole buffer pool
+		int io = blocks + 2 * bucketBlocks;
+		if (FUDGE_FACTOR * smallerBucketBlocks > getShare(freeBlocks) - 1)
+			io += getRepartitionIO(smallerBucketBlocks, bucketBlocks, freeBlocks);
+		return io;
+	}
+
+	private Relation[] partition(ForkJoinPool pool, int workers, Relation relation, int joinAttribute,
+			int bucketCount) {
+		Relation[] buckets = new Relation[bucketCount];
+		for (int i = 0; i < bucketCount; ++i) {
+			buckets[i] = new Relation();
+		}
+
+		List<Block> blocks = Lists.newArrayList(relation);
+		AtomicInteger next = new AtomicInteger();
+		runWorkers(pool, workers, () -> {
+			Block[] outputBlocks = new Block[bucketCount];
+			int i;
+			while ((i = next.getAndIncrement()) < blocks.size()) {
+				Block block = blocks.get(i);
+				blockManager.pin(block);
+				for (Tuple tuple : block) {
+					int hashValue = getHashValue(tuple, joinAttribute, bucketCount, 0);
+					Block outputBlock = outputBlocks[hashValue];
+					if (outputBlock == null || !outputBlock.addTuple(tuple)) {
+						if (outputBlock != null)
+							blockManager.unpin(outputBlock);
+						outputBlock = buckets[hashValue].getFreeBlock(blockManager);
+						blockManager.pin(outputBlock);
+						outputBlock.addTuple(tuple);
+						outputBlocks[hashValue] = outputBlock;
+					}
+				}
+				blockManager.unpin(block);
+			}
+			for (Block outputBlock : outputBlocks) {
+				if (outputBlock != null)
+					blockManager.unpin(outputBlock);
+			}
+		});
+		for (Relation bucket : buckets) {
+			if (bucket.getBlockCount() > 0)
+				blockManager.observe("bucketBlocks", bucket.getBlockCount());
+		}
+		return buckets;
+	}
+
+	private static void runWorkers(ForkJoinPool pool, int workers, Runnable worker) {
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+		for (int i = 0; i < workers; ++i) {
+			tasks.add(pool.submit(worker));
+		}
+		for (ForkJoinTask<?> task : tasks) {
+			task.join();
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package join.algorithms;
+
+import com.google.common.collect.Iterables;
+
+import join.datastructures.Block;
+import join.datastructures.BloomFilter;
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.RelationStatistics.AttributeStatistics;
+import join.datastructures.Tuple;
+
+/**
+ * A Bloom filter on the join keys of one relation, which drops tuples of the
+ * other relation that cannot have a join partner. The filter is sized when the
+ * first block is added, from its tuple count and the block count of the
+ * relation.
+ */
+final class SemiJoinFilter {
+
+	private final Relation relation;
+	private final int joinAttribute;
+	private final double falsePositiveRate;
+	private BloomFilter filter;
+
+	SemiJoinFilter(Relation relation, int joinAttribute, double falsePositiveRate) {
+		this.relation = relation;
+		this.joinAttribute = joinAttribute;
+		this.falsePositiveRate = falsePositiveRate;
+	}
+
+	/**
+	 * Adds the keys of a pinned block of the filtered relation.
+	 */
+	void add(Block block) {
+		if (filter == null) {
+			long expectedKeys = (long) Iterables.size(block) * relation.getBlockCount();
+			filter = new BloomFilter(expectedKeys, falsePositiveRate);
+		}
+		for (Tuple tuple : block) {
+			filter.add(tuple.getKey(joinAttribute));
+		}
+	}
+
+	/**
+	 * Returns whether a tuple of the other relation might have a join partner.
+	 */
+	boolean mightMatch(Tuple tuple, int otherAttribute) {
+		return filter != null && filter.mightContain(tuple.getKey(otherAttribute));
+	}
+
+	/**
+	 * Estimates the fraction of tuples of the other relation that pass the filter.
+	 * The distinct keys of the relation with fewer distinct keys are assumed to be
+	 * contained in the other one. Without statistics (or with an attribute of -1),
+	 * the keys are assumed to be in proportion to the sizes of the relations, as in
+	 * a foreign-key join.
+	 */
+	static double getPassRate(Relation filtered, int filteredAttribute, Relation other, int otherAttribute,
+			double falsePositiveRate) {
+		if (other.getBlockCount() == 0)
+			return 0;
+		AttributeStatistics filteredStatistics = getAttributeStatistics(filtered, filteredAttribute);
+		AttributeStatistics otherStatistics = getAttributeStatistics(other, otherAttribute);
+		double matching;
+		if (filteredStatistics != null && otherStatistics != null) {
+			matching = Math.min(1, (double) filteredStatistics.getDistinctCount() / otherStatistics.getDistinctCount());
+		} else {
+			matching = Math.min(1, (double) filtered.getBlockCount() / other.getBlockCount());
+		}
+		return matching + (1 - matching) * falsePositiveRate;
+	}
+
+	private static AttributeStatistics getAttributeStatistics(Relation relation, int attribute) {
+		RelationStatistics statistics = relation.getStatistics();
+		return statistics == null ? null : statistics.getAttribute(attribute);
+	}
+}
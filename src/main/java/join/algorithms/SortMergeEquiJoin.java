@@ -0,0 +1,198 @@
+package join.algorithms;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.helper.PinningOutputTarget;
+import join.helper.PinningTupleIterator;
+import join.manager.BlockManager;
+
+/**
+ * External sort-merge equi-join. Both relations are cut into sorted runs that
+ * fill the free buffer pool, the runs are merged k-way until all runs of both
+ * relations can be read at the same time, and the two sorted streams are then
+ * merge-joined. Groups of tuples with equal keys are buffered, so duplicate
+ * keys on both sides are joined correctly.
+ */
+public class SortMergeEquiJoin implements Join {
+
+	protected final BlockManager blockManager;
+
+	public SortMergeEquiJoin(BlockManager blockManager) {
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+			Consumer<Tuple> consumer) {
+		int freeBlocks = blockManager.getFreeBlockCount();
+		if (freeBlocks < 3) {
+			throw new IllegalStateException("sort-merge join needs at least three free blocks");
+		}
+
+		// create sorted runs, each filling the buffer pool except for the output block
+		blockManager.markPhase("runs");
+		Deque<Relation> runs1 = createRuns(relation1, joinAttribute1, freeBlocks - 1);
+		Deque<Relation> runs2 = createRuns(relation2, joinAttribute2, freeBlocks - 1);
+
+		// merge runs until one block of every run of both relations fits into memory,
+		// except for the output block the consumer may pin
+		blockManager.observe("runs", runs1.size() + runs2.size());
+		blockManager.markPhase("merge");
+		while (runs1.size() + runs2.size() > freeBlocks - 1) {
+			if (runs1.size() >= runs2.size()) {
+				mergeRuns(runs1, joinAttribute1, freeBlocks - 1);
+			} else {
+				mergeRuns(runs2, joinAttribute2, freeBlocks - 1);
+			}
+		}
+
+		blockManager.markPhase("join");
+		List<PinningTupleIterator> iterators = new ArrayList<>();
+		try {
+			PeekingIterator<Tuple> left = openSorted(runs1, joinAttribute1, iterators);
+			PeekingIterator<Tuple> right = openSorted(runs2, joinAttribute2, iterators);
+			mergeJoin(left, joinAttribute1, right, joinAttribute2, consumer);
+		} finally {
+			iterators.forEach(PinningTupleIterator::close);
+		}
+	}
+
+	private void mergeJoin(PeekingIterator<Tuple> left, int joinAttribute1, PeekingIterator<Tuple> right,
+			int joinAttribute2, Consumer<Tuple> consumer) {
+		List<Tuple> group = new ArrayList<>();
+		while (left.hasNext() && right.hasNext()) {
+			JoinKey leftKey = left.peek().getKey(joinAttribute1);
+			int cmp = leftKey.compareTo(right.peek().getKey(joinAttribute2));
+			if (cmp < 0) {
+				left.next();
+			} else if (cmp > 0) {
+				right.next();
+			} else {
+				// buffer the group of left tuples and stream the matching right tuples past it
+				group.clear();
+				while (left.hasNext() && leftKey.equals(left.peek().getKey(joinAttribute1))) {
+					group.add(left.next());
+				}
+				while (right.hasNext() && leftKey.equals(right.peek().getKey(joinAttribute2))) {
+					Tuple t2 = right.next();
+					for (Tuple t1 : group) {
+						consumer.accept(Join.joinTuple(t1, joinAttribute1, t2, joinAttribute2));
+					}
+				}
+			}
+		}
+	}
+
+	private Deque<Relation> createRuns(Relation relation, int joinAttribute, int runBlocks) {
+		Deque<Relation> runs = new ArrayDeque<>();
+		Iterator<Block> blocks = relation.iterator();
+		List<Block> chunk = new ArrayList<>(runBlocks);
+		while (blocks.hasNext()) {
+			while (chunk.size() < runBlocks && blocks.hasNext()) {
+				Block block = blocks.next();
+				blockManager.pin(block);
+				chunk.add(block);
+			}
+
+			// every pinned block is sorted on its own, the blocks are then merged in memory
+			List<Iterator<Tuple>> sorted = new ArrayList<>(chunk.size());
+			for (Block block : chunk) {
+				sorted.add(block.sortedIterator(joinAttribute));
+			}
+			Iterator<Tuple> merged = Iterators.mergeSorted(sorted, comparator(joinAttribute));
+			if (merged.hasNext()) {
+				runs.add(writeRun(merged));
+			}
+
+			for (Block block : chunk) {
+				blockManager.unpin(block);
+			}
+			chunk.clear();
+		}
+		return runs;
+	}
+
+	private void mergeRuns(Deque<Relation> runs, int joinAttribute, int fanIn) {
+		List<Relation> toMerge = new ArrayList<>(fanIn);
+		while (toMerge.size() < fanIn && !runs.isEmpty()) {
+			toMerge.add(runs.poll());
+		}
+
+		List<PinningTupleIterator> iterators = new ArrayList<>(toMerge.size());
+		try {
+			runs.add(writeRun(openSorted(toMerge, joinAttribute, iterators)));
+		} finally {
+			iterators.forEach(PinningTupleIterator::close);
+		}
+	}
+
+	private Relation writeRun(Iterator<Tuple> tuples) {
+		Relation run = new Relation();
+		try (PinningOutputTarget target = new PinningOutputTarget(run, blockManager)) {
+			while (tuples.hasNext()) {
+				target.addTuple(tuples.next());
+			}
+		}
+		return run;
+	}
+
+	private PeekingIterator<Tuple> openSorted(Iterable<Relation> runs, int joinAttribute,
+			List<PinningTupleIterator> iterators) {
+		List<Iterator<Tuple>> sorted = new ArrayList<>();
+		for (Relation run : runs) {
+			PinningTupleIterator iter = new PinningTupleIterator(run.iterator(), blockManager);
+			iterators.add(iter);
+			sorted.add(iter);
+		}
+		return Iterators.peekingIterator(Iterators.mergeSorted(sorted, comparator(joinAttribute)));
+	}
+
+	private static Comparator<Tuple> comparator(int joinAttribute) {
+		return Comparator.comparing(t -> t.getKey(joinAttribute));
+	}
+
+	@Override
+	public int getIOEstimate(Relation relation1, Relation relation2) {
+		int freeBlocks = Math.max(3, blockManager.getFreeBlockCount());
+
+		// simulate the merge passes on run sizes (in blocks)
+		Deque<Integer> runs1 = estimateRuns(relation1.getBlockCount(), freeBlocks - 1);
+		Deque<Integer> runs2 = estimateRuns(relation2.getBlockCount(), freeBlocks - 1);
+
+		// reading the input, writing the runs and reading them for the final merge
+		int io = 3 * (relation1.getBlockCount() + relation2.getBlockCount());
+		while (runs1.size() + runs2.size() > freeBlocks - 1) {
+			Deque<Integer> runs = runs1.size() >= runs2.size() ? runs1 : runs2;
+			int merged = 0;
+			for (int i = 0; i < freeBlocks - 1 && !runs.isEmpty(); ++i) {
+				merged += runs.poll();
+			}
+			// every intermediate merge reads and writes its runs once more
+			io += 2 * merged;
+			runs.add(merged);
+		}
+		return io;
+	}
+
+	private static Deque<Integer> estimateRuns(int blockCount, int runBlocks) {
+		Deque<Integer> runs = new ArrayDeque<>();
+		for (int remaining = blockCount; remaining > 0; remaining -= runBlocks) {
+			runs.add(Math.min(remaining, runBlocks));
+		}
+		return runs;
+	}
+
+}
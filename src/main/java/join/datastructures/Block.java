@@ -18,31 +18,32 @@ import join.manager.BlockManager.BlockGate;
 public final class Block implements Iterable<Tuple> {
 
 	private final int maxSize;
-	private final List<Tuple> tuples;
-
-	private int currentSize;
+	private final BlockContent tuples;
 
 	private final BlockGate gate;
 
 	public Block(int maxSize, BlockGate gate) {
+		this(maxSize, gate, BlockLayout.ROWS);
+	}
+
+	public Block(int maxSize, BlockGate gate, BlockLayout layout) {
 		Objects.requireNonNull(gate, "block gate must not be null");
+		Objects.requireNonNull(layout, "block layout must not be null");
 
 		this.maxSize = maxSize;
-		this.currentSize = 0;
-		this.tuples = new ArrayList<>();
+		this.tuples = layout.newContent();
 		this.gate = gate;
+		gate.bind(tuples);
 	}
 
 	public boolean addTuple(Tuple tuple) {
-		Objects.requireNonNull(gate, "tuple must not be null");
+		Objects.requireNonNull(tuple, "tuple must not be null");
 
 		checkAccess("cannot write to unpinned block");
 
-		int tupleSize = tuple.getSizeInBytes();
-		if (currentSize + tupleSize <= maxSize) {
+		// a block keeps its own copy of a concatenation, not the tuples it views
+		if (tuples.add(tuple.materialize(), maxSize)) {
 			gate.markDirty();
-			this.tuples.add(tuple);
-			this.currentSize += tupleSize;
 			return true;
 		}
 		return false;
@@ -53,9 +54,14 @@ public final class Block implements Iterable<Tuple> {
 		return new GatedIterator<>(Iterators.unmodifiableIterator(tuples.iterator()));
 	}
 
+	/**
+	 * Returns an iterator over the tuples ordered by the {@link JoinKey} of the
+	 * given attribute.
+	 */
 	public Iterator<Tuple> sortedIterator(int attribute) {
-		List<Tuple> sorted = new ArrayList<>(tuples);
-		sorted.sort(Comparator.comparing(t -> t.getData(attribute)));
+		List<Tuple> sorted = new ArrayList<>(tuples.size());
+		tuples.forEach(sorted::add);
+		sorted.sort(Comparator.comparing(t -> t.getKey(attribute)));
 		return new GatedIterator<>(Iterators.unmodifiableIterator(sorted.iterator()));
 	}
 
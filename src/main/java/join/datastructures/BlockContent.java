@@ -0,0 +1,83 @@
+package join.datastructures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The tuples stored in a block, in one of the {@link BlockLayout}s. The size of
+ * the content is measured in the bytes of its layout.
+ */
+public interface BlockContent extends Iterable<Tuple> {
+
+	/**
+	 * Adds a tuple, if the content stays within the given size.
+	 * 
+	 * @param tuple   the tuple to add
+	 * @param maxSize the maximum size of the content in bytes
+	 * @return whether the tuple was added
+	 */
+	boolean add(Tuple tuple, int maxSize);
+
+	/**
+	 * Returns the number of tuples.
+	 * 
+	 * @return the number of tuples
+	 */
+	int size();
+
+	/**
+	 * Returns the size of the content in bytes.
+	 * 
+	 * @return the size of the content in bytes
+	 */
+	int getSizeInBytes();
+
+	/**
+	 * Removes all tuples, to release the memory of an unloaded block.
+	 */
+	void clear();
+
+	/**
+	 * Writes the tuples in the format of the layout. This takes at most twice the
+	 * size of the content plus {@link #HEADER_SIZE} bytes.
+	 * 
+	 * @param buffer the buffer to write to
+	 */
+	void writeTo(ByteBuffer buffer);
+
+	/**
+	 * Reads tuples written by {@link #writeTo(ByteBuffer)} and adds them.
+	 * 
+	 * @param buffer the buffer to read from
+	 */
+	void readFrom(ByteBuffer buffer);
+
+	/** The size of the fixed part of the written content in bytes. */
+	int HEADER_SIZE = 8;
+
+	/**
+	 * Writes a string as its length followed by its characters.
+	 * 
+	 * @param buffer the buffer to write to
+	 * @param value  the string to write
+	 */
+	static void writeString(ByteBuffer buffer, String value) {
+		buffer.putInt(value.length());
+		for (int c = 0; c < value.length(); ++c) {
+			buffer.putChar(value.charAt(c));
+		}
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(ByteBuffer, String)}.
+	 * 
+	 * @param buffer the buffer to read from
+	 * @return the string
+	 */
+	static String readString(ByteBuffer buffer) {
+		char[] chars = new char[buffer.getInt()];
+		for (int c = 0; c < chars.length; ++c) {
+			chars[c] = buffer.getChar();
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,41 @@
+package join.datastructures;
+
+/**
+ * The way a block stores its tuples.
+ */
+public enum BlockLayout {
+	/**
+	 * Tuples are stored as they are, every tuple costs
+	 * {@link Tuple#getSizeInBytes()}.
+	 */
+	ROWS {
+		@Override
+		BlockContent newContent() {
+			return new RowBlockContent();
+		}
+	},
+	/**
+	 * Every attribute is stored as a column. Columns with few distinct values are
+	 * dictionary-encoded, so repeated values are only stored once per block.
+	 */
+	COLUMNS {
+		@Override
+		BlockContent newContent() {
+			return new ColumnarBlockContent();
+		}
+	},
+	/**
+	 * Every attribute is stored as a column of values that are prefix-, delta- or
+	 * dictionary-encoded, see {@link CompressedBlockContent}. The encoding is only
+	 * applied when the block is written to the block file and reversed when it is
+	 * read, but the size of the block is always measured in encoded bytes.
+	 */
+	COMPRESSED {
+		@Override
+		BlockContent newContent() {
+			return new CompressedBlockContent();
+		}
+	};
+
+	abstract BlockContent newContent();
+}
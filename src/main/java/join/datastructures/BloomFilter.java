@@ -0,0 +1,72 @@
+package join.datastructures;
+
+/**
+ * A Bloom filter on join keys. It answers whether a key might have been added,
+ * keys that were added are never rejected. The filter is sized for an expected
+ * number of keys and a false-positive rate, the probe positions are derived
+ * from the cached hash codes of the keys by double hashing.
+ */
+public final class BloomFilter {
+
+	private static final double LN2 = Math.log(2);
+	// independent of the seeds hash joins partition with
+	private static final int SEED = 0x5EED;
+
+	private final long[] bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	/**
+	 * Constructs a new empty filter.
+	 *
+	 * @param expectedKeys      The number of keys that are expected to be added.
+	 * @param falsePositiveRate The rate of keys that were not added, but are
+	 *                          accepted anyway, once the expected number of keys
+	 *                          was added.
+	 */
+	public BloomFilter(long expectedKeys, double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("false-positive rate must be between 0 and 1");
+		}
+		long keys = Math.max(1, expectedKeys);
+		long optimalBits = (long) Math.ceil(-keys * Math.log(falsePositiveRate) / (LN2 * LN2));
+		this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) >>> 6))];
+		this.bitCount = 64L * bits.length;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitCount / keys * LN2));
+	}
+
+	public void add(JoinKey key) {
+		long hash1 = key.hashCode();
+		long hash2 = key.hashCode(SEED);
+		for (int i = 0; i < hashCount; ++i) {
+			long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Returns whether the key might have been added to this filter.
+	 *
+	 * @param key the key to look up
+	 * @return <tt>false</tt>, if the key was definitely not added
+	 */
+	public boolean mightContain(JoinKey key) {
+		long hash1 = key.hashCode();
+		long hash2 = key.hashCode(SEED);
+		for (int i = 0; i < hashCount; ++i) {
+			long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+			if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of bits of this filter.
+	 *
+	 * @return the size of the filter in bits
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+}
@@ -0,0 +1,239 @@
+package join.datastructures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Block content that stores every attribute as a column. A column starts out
+ * dictionary-encoded: every distinct value is stored once and rows refer to it
+ * by a code. Once the dictionary is larger than storing the values directly,
+ * the column is converted to a plain column.
+ *
+ * All tuples of a block must have the same number of attributes, a tuple with a
+ * different number of attributes is rejected like a tuple that does not fit.
+ */
+final class ColumnarBlockContent implements BlockContent {
+
+	/** The size of a dictionary code in bytes. */
+	private static final int CODE_SIZE = 2;
+	/** The cost of storing a value in addition to its length, like in a tuple. */
+	private static final int VALUE_COST = 4;
+	/** Columns are not converted before they have this many rows. */
+	private static final int MIN_ROWS = 16;
+
+	private Column[] columns;
+	private int rows;
+	private int currentSize;
+
+	@Override
+	public boolean add(Tuple tuple, int maxSize) {
+		if (columns == null) {
+			columns = new Column[tuple.getAttributeCount()];
+			for (int i = 0; i < columns.length; ++i) {
+				columns[i] = new Column();
+			}
+		} else if (columns.length != tuple.getAttributeCount()) {
+			return false;
+		}
+
+		int tupleSize = 0;
+		for (int i = 0; i < columns.length; ++i) {
+			tupleSize += columns[i].getCost(tuple.getData(i));
+		}
+		if (currentSize + tupleSize > maxSize)
+			return false;
+
+		for (int i = 0; i < columns.length; ++i) {
+			columns[i].add(tuple.getData(i), rows);
+		}
+		rows++;
+		currentSize += tupleSize;
+
+		if (rows >= MIN_ROWS) {
+			for (Column column : columns) {
+				// converting only happens if it makes the column smaller
+				currentSize += column.convertIfLarger(rows);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public Iterator<Tuple> iterator() {
+		if (columns == null)
+			return Collections.emptyIterator();
+
+		return new Iterator<Tuple>() {
+			private int row = 0;
+
+			@Override
+			public boolean hasNext() {
+				return row < rows;
+			}
+
+			@Override
+			public Tuple next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				String[] data = new String[columns.length];
+				for (int i = 0; i < data.length; ++i) {
+					data[i] = columns[i].get(row);
+				}
+				row++;
+				return new Tuple(data);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return rows;
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return currentSize;
+	}
+
+	@Override
+	public void clear() {
+		columns = null;
+		rows = 0;
+		currentSize = 0;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(columns == null ? 0 : columns.length);
+		buffer.putInt(rows);
+		if (columns == null)
+			return;
+		for (Column column : columns) {
+			column.writeTo(buffer, rows);
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer) {
+		int columnCount = buffer.getInt();
+		int rowCount = buffer.getInt();
+		if (columnCount == 0)
+			return;
+
+		String[][] data = new String[rowCount][columnCount];
+		for (int i = 0; i < columnCount; ++i) {
+			int dictionarySize = buffer.getInt();
+			if (dictionarySize < 0) {
+				for (int row = 0; row < rowCount; ++row) {
+					data[row][i] = BlockContent.readString(buffer);
+				}
+			} else {
+				String[] dictionary = new String[dictionarySize];
+				for (int code = 0; code < dictionary.length; ++code) {
+					dictionary[code] = BlockContent.readString(buffer);
+				}
+				for (int row = 0; row < rowCount; ++row) {
+					data[row][i] = dictionary[buffer.getInt()];
+				}
+			}
+		}
+		for (String[] tuple : data) {
+			add(new Tuple(tuple), Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * A dictionary-encoded or plain column.
+	 */
+	private static final class Column {
+		// null once the column is plain
+		private Map<String, Integer> dictionary;
+		// the distinct values of a dictionary-encoded column, or all values
+		private final List<String> values;
+		private int[] codes;
+
+		private int plainSize;
+		private int dictionarySize;
+
+		private Column() {
+			this.dictionary = new HashMap<>();
+			this.values = new ArrayList<>();
+			this.codes = new int[16];
+		}
+
+		private int getCost(String value) {
+			if (dictionary == null)
+				return value.length() + VALUE_COST;
+			if (dictionary.containsKey(value))
+				return CODE_SIZE;
+			return value.length() + VALUE_COST + CODE_SIZE;
+		}
+
+		private void add(String value, int row) {
+			plainSize += value.length() + VALUE_COST;
+			if (dictionary == null) {
+				values.add(value);
+				return;
+			}
+
+			Integer code = dictionary.get(value);
+			if (code == null) {
+				code = values.size();
+				dictionary.put(value, code);
+				values.add(value);
+				dictionarySize += value.length() + VALUE_COST;
+			}
+			if (row == codes.length)
+				codes = Arrays.copyOf(codes, 2 * row);
+			codes[row] = code;
+		}
+
+		private void writeTo(ByteBuffer buffer, int rows) {
+			// the dictionary size, or -1 for a plain column
+			buffer.putInt(dictionary == null ? -1 : values.size());
+			for (String value : values) {
+				BlockContent.writeString(buffer, value);
+			}
+			if (dictionary != null) {
+				for (int row = 0; row < rows; ++row) {
+					buffer.putInt(codes[row]);
+				}
+			}
+		}
+
+		private String get(int row) {
+			return dictionary == null ? values.get(row) : values.get(codes[row]);
+		}
+
+		/**
+		 * Converts a dictionary-encoded column into a plain one, if the dictionary
+		 * does not pay off.
+		 * 
+		 * @return the change of the column size in bytes
+		 */
+		private int convertIfLarger(int rows) {
+			if (dictionary == null)
+				return 0;
+			int encodedSize = dictionarySize + CODE_SIZE * rows;
+			if (encodedSize <= plainSize)
+				return 0;
+
+			List<String> plain = new ArrayList<>(rows);
+			for (int row = 0; row < rows; ++row) {
+				plain.add(values.get(codes[row]));
+			}
+			values.clear();
+			values.addAll(plain);
+			dictionary = null;
+			codes = null;
+			return plainSize - encodedSize;
+		}
+	}
+}
@@ -0,0 +1,314 @@
+package join.datastructures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Block content that is measured in the bytes of its compressed encoding. The
+ * tuples are kept as they are while the block is loaded, they are only encoded
+ * when the block is written to the block file, and decoded when it is read back.
+ *
+ * Every attribute is encoded as a column, and every value in the cheapest of
+ * three ways, relative to the column values before it in the block:
+ * <ul>
+ * <li>by the length of the prefix it shares with the previous value, followed by
+ * the rest of it, which compresses sorted keys like <tt>tt0000001</tt>,
+ * <tt>tt0000002</tt>,</li>
+ * <li>by the difference of its trailing number to the one of the previous
+ * value, if both have the same prefix and number of digits, e.g. 1 from
+ * <tt>tt0000009</tt> to <tt>tt0000010</tt>,</li>
+ * <li>by the code of an equal value before it, which compresses columns with
+ * few distinct values.</li>
+ * </ul>
+ * Numbers are written as variable-length integers, characters as variable-length
+ * integers of their code units, so ASCII values take one byte per character.
+ *
+ * All tuples of a block must have the same number of attributes, a tuple with a
+ * different number of attributes is rejected like a tuple that does not fit.
+ */
+final class CompressedBlockContent implements BlockContent {
+
+	private static final int PREFIX = 0;
+	private static final int DELTA = 1;
+	private static final int CODE = 2;
+	/** The number of bits of the header of a value that select its encoding. */
+	private static final int MODE_BITS = 2;
+	/** The largest number of distinct values a column assigns codes to. */
+	private static final int MAX_CODES = 1 << 16;
+	/** The most digits of a trailing number that are delta-encoded. */
+	private static final int MAX_DIGITS = 18;
+
+	private final List<Tuple> tuples = new ArrayList<>();
+	private Column[] columns;
+	private int currentSize;
+
+	@Override
+	public boolean add(Tuple tuple, int maxSize) {
+		if (columns == null) {
+			columns = newColumns(tuple.getAttributeCount());
+		} else if (columns.length != tuple.getAttributeCount()) {
+			return false;
+		}
+
+		int tupleSize = 0;
+		for (int i = 0; i < columns.length; ++i) {
+			tupleSize += columns[i].getCost(tuple.getData(i));
+		}
+		if (currentSize + tupleSize > maxSize)
+			return false;
+
+		for (int i = 0; i < columns.length; ++i) {
+			columns[i].append(tuple.getData(i), null);
+		}
+		tuples.add(tuple);
+		currentSize += tupleSize;
+		return true;
+	}
+
+	private static Column[] newColumns(int count) {
+		Column[] result = new Column[count];
+		for (int i = 0; i < count; ++i) {
+			result[i] = new Column();
+		}
+		return result;
+	}
+
+	@Override
+	public Iterator<Tuple> iterator() {
+		return tuples.iterator();
+	}
+
+	@Override
+	public int size() {
+		return tuples.size();
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return currentSize;
+	}
+
+	@Override
+	public void clear() {
+		tuples.clear();
+		columns = null;
+		currentSize = 0;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(columns == null ? 0 : columns.length);
+		buffer.putInt(tuples.size());
+		if (columns == null)
+			return;
+		// the encoding of every column is replayed with fresh state, so it takes
+		// exactly the bytes that were counted when the tuples were added
+		for (int i = 0; i < columns.length; ++i) {
+			Column column = new Column();
+			for (Tuple tuple : tuples) {
+				column.append(tuple.getData(i), buffer);
+			}
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer) {
+		int columnCount = buffer.getInt();
+		int rowCount = buffer.getInt();
+		if (columnCount == 0)
+			return;
+
+		String[][] data = new String[rowCount][columnCount];
+		for (int i = 0; i < columnCount; ++i) {
+			Column column = new Column();
+			for (int row = 0; row < rowCount; ++row) {
+				data[row][i] = column.read(buffer);
+			}
+		}
+		for (String[] tuple : data) {
+			add(Tuple.wrap(tuple), Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * The state of the encoding of a column: the previous value and the codes of
+	 * the distinct values so far.
+	 */
+	private static final class Column {
+		private final Map<String, Integer> codes = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		private String previous;
+		// the start of the trailing number of the previous value and the number
+		private int previousDigits = -1;
+		private long previousNumber;
+
+		/**
+		 * Returns the size of the cheapest encoding of the value.
+		 */
+		private int getCost(String value) {
+			return encode(value, null);
+		}
+
+		/**
+		 * Encodes the value in the cheapest way, writes it to the buffer, if it is
+		 * not <tt>null</tt>, and adds it to the state.
+		 */
+		private void append(String value, ByteBuffer buffer) {
+			if (buffer != null)
+				encode(value, buffer);
+			update(value);
+		}
+
+		/**
+		 * Computes the cheapest encoding and writes it, if the buffer is not
+		 * <tt>null</tt>.
+		 *
+		 * @return the size of the encoding in bytes
+		 */
+		private int encode(String value, ByteBuffer buffer) {
+			Integer code = codes.get(value);
+			long codeHeader = code == null ? -1 : (long) code << MODE_BITS | CODE;
+			int codeCost = code == null ? Integer.MAX_VALUE : varIntSize(codeHeader);
+
+			long deltaHeader = -1;
+			int deltaCost = Integer.MAX_VALUE;
+			int digits = getDigitStart(value);
+			if (previousDigits >= 0 && digits >= 0 && value.length() == previous.length()
+					&& digits == previousDigits && value.regionMatches(0, previous, 0, digits)) {
+				long delta = Long.parseLong(value.substring(digits)) - previousNumber;
+				deltaHeader = (delta << 1 ^ delta >> 63) << MODE_BITS | DELTA;
+				// the zigzag-encoded difference must survive the mode bits
+				if (deltaHeader >>> MODE_BITS == (delta << 1 ^ delta >> 63))
+					deltaCost = varIntSize(deltaHeader);
+			}
+
+			int prefix = previous == null ? 0 : getCommonPrefix(previous, value);
+			long prefixHeader = (long) prefix << MODE_BITS | PREFIX;
+			int prefixCost = varIntSize(prefixHeader) + varIntSize(value.length() - prefix);
+			for (int c = prefix; c < value.length(); ++c) {
+				prefixCost += varIntSize(value.charAt(c));
+			}
+
+			if (codeCost <= deltaCost && codeCost <= prefixCost) {
+				if (buffer != null)
+					writeVarInt(buffer, codeHeader);
+				return codeCost;
+			}
+			if (deltaCost <= prefixCost) {
+				if (buffer != null)
+					writeVarInt(buffer, deltaHeader);
+				return deltaCost;
+			}
+			if (buffer != null) {
+				writeVarInt(buffer, prefixHeader);
+				writeVarInt(buffer, value.length() - prefix);
+				for (int c = prefix; c < value.length(); ++c) {
+					writeVarInt(buffer, value.charAt(c));
+				}
+			}
+			return prefixCost;
+		}
+
+		/**
+		 * Decodes the next value of the column and adds it to the state.
+		 */
+		private String read(ByteBuffer buffer) {
+			long header = readVarInt(buffer);
+			long payload = header >>> MODE_BITS;
+			String value;
+			switch ((int) (header & ((1 << MODE_BITS) - 1))) {
+			case CODE:
+				value = values.get((int) payload);
+				break;
+			case DELTA:
+				long number = previousNumber + (payload >>> 1 ^ -(payload & 1));
+				StringBuilder digits = new StringBuilder(Long.toString(number));
+				int width = previous.length() - previousDigits;
+				while (digits.length() < width) {
+					digits.insert(0, '0');
+				}
+				value = previous.substring(0, previousDigits) + digits;
+				break;
+			case PREFIX:
+				int prefix = (int) payload;
+				char[] suffix = new char[(int) readVarInt(buffer)];
+				for (int c = 0; c < suffix.length; ++c) {
+					suffix[c] = (char) readVarInt(buffer);
+				}
+				value = (prefix == 0 ? "" : previous.substring(0, prefix)) + new String(suffix);
+				break;
+			default:
+				throw new IllegalStateException("invalid value encoding: " + header);
+			}
+			update(value);
+			return value;
+		}
+
+		private void update(String value) {
+			if (values.size() < MAX_CODES && !codes.containsKey(value)) {
+				codes.put(value, values.size());
+				values.add(value);
+			}
+			previous = value;
+			previousDigits = getDigitStart(value);
+			if (previousDigits >= 0)
+				previousNumber = Long.parseLong(value.substring(previousDigits));
+		}
+
+		/**
+		 * Returns the start of the trailing digits of a value.
+		 *
+		 * @return the index of the first trailing digit, or -1, if the value does not
+		 *         end with 1 to {@link #MAX_DIGITS} digits
+		 */
+		private static int getDigitStart(String value) {
+			int start = value.length();
+			while (start > 0 && value.charAt(start - 1) >= '0' && value.charAt(start - 1) <= '9') {
+				start--;
+			}
+			int digits = value.length() - start;
+			return digits == 0 || digits > MAX_DIGITS ? -1 : start;
+		}
+
+		private static int getCommonPrefix(String a, String b) {
+			int length = Math.min(a.length(), b.length());
+			int prefix = 0;
+			while (prefix < length && a.charAt(prefix) == b.charAt(prefix)) {
+				prefix++;
+			}
+			return prefix;
+		}
+	}
+
+	private static int varIntSize(long value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	private static void writeVarInt(ByteBuffer buffer, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long readVarInt(ByteBuffer buffer) {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,137 @@
+package join.datastructures;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A space-saving sketch that finds the most frequent values of a stream with a
+ * fixed number of counters. Every value that occurs more often than
+ * <tt>n / capacity</tt> times in a stream of <tt>n</tt> values is guaranteed to
+ * be kept, its count is overestimated by at most <tt>n / capacity</tt>.
+ *
+ * The counters are also kept ordered by their counts, so adding a value takes
+ * <tt>O(log capacity)</tt> time, even if it takes over the smallest counter.
+ *
+ * @param <T> the type of the values
+ */
+public final class HeavyHitterSketch<T> {
+
+	private final int capacity;
+	private final Map<T, Counter<T>> counters;
+	// the counters ordered by ascending count
+	private final TreeSet<Counter<T>> ordered = new TreeSet<>();
+	private long total;
+	// the number of counters created, which orders counters with equal counts
+	private long created;
+
+	/**
+	 * Constructs a new empty sketch.
+	 *
+	 * @param capacity The number of counters.
+	 */
+	public HeavyHitterSketch(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		this.counters = new HashMap<>(2 * capacity);
+	}
+
+	public void add(T value) {
+		add(value, 1, 0);
+	}
+
+	private void add(T value, long count, long error) {
+		total += count;
+		Counter<T> counter = counters.get(value);
+		if (counter != null) {
+			ordered.remove(counter);
+			counter.count += count;
+			counter.error += error;
+			ordered.add(counter);
+		} else if (counters.size() < capacity) {
+			counter = new Counter<>(value, count, error, created++);
+			counters.put(value, counter);
+			ordered.add(counter);
+		} else {
+			// the new value takes over the smallest counter, its count becomes the error
+			Counter<T> min = ordered.pollFirst();
+			counters.remove(min.value);
+			counter = new Counter<>(value, min.count + count, min.count + error, created++);
+			counters.put(value, counter);
+			ordered.add(counter);
+		}
+	}
+
+	/**
+	 * Adds the counters of another sketch to this sketch.
+	 *
+	 * @param other the sketch to merge
+	 */
+	public void merge(HeavyHitterSketch<T> other) {
+		// the counters of a sketch always sum up to its total
+		for (Map.Entry<T, Counter<T>> entry : other.counters.entrySet()) {
+			add(entry.getKey(), entry.getValue().count, entry.getValue().error);
+		}
+	}
+
+	/**
+	 * Returns the number of values added.
+	 *
+	 * @return the length of the stream
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Returns whether a value certainly occurs more often than
+	 * <tt>n / capacity</tt> times so far, without sorting the counters like
+	 * {@link #getHeavyHitters()}.
+	 *
+	 * @param value the value to check
+	 * @return whether the value is a heavy hitter
+	 */
+	public boolean isHeavyHitter(T value) {
+		Counter<T> counter = counters.get(value);
+		return counter != null && (counter.count - counter.error) * capacity > total;
+	}
+
+	/**
+	 * Returns the values that certainly occur more often than
+	 * <tt>n / capacity</tt> times, ordered by descending estimated count.
+	 *
+	 * @return the heavy hitters and their estimated counts
+	 */
+	public Map<T, Long> getHeavyHitters() {
+		Map<T, Long> heavyHitters = new LinkedHashMap<>();
+		for (Counter<T> counter : ordered.descendingSet()) {
+			if ((counter.count - counter.error) * capacity > total)
+				heavyHitters.put(counter.value, counter.count);
+		}
+		return heavyHitters;
+	}
+
+	private static final class Counter<T> implements Comparable<Counter<T>> {
+		private final T value;
+		private long count;
+		// the maximum overestimation of the count
+		private long error;
+		private final long id;
+
+		private Counter(T value, long count, long error, long id) {
+			this.value = value;
+			this.count = count;
+			this.error = error;
+			this.id = id;
+		}
+
+		@Override
+		public int compareTo(Counter<T> other) {
+			int result = Long.compare(count, other.count);
+			return result != 0 ? result : Long.compare(id, other.id);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package join.datastructures;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct hash values added
+ * to it in constant space. The standard error is about 1.6%.
+ */
+public final class HyperLogLog {
+
+	private static final int PRECISION = 12;
+	private static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+	private final byte[] registers = new byte[REGISTERS];
+
+	/**
+	 * Adds a hash value. The bits of the value have to be uniformly distributed.
+	 *
+	 * @param hash the 64 bit hash value to add
+	 */
+	public void add(long hash) {
+		int register = (int) (hash >>> (64 - PRECISION));
+		int rank = Long.numberOfLeadingZeros(hash << PRECISION | 1L << (PRECISION - 1)) + 1;
+		if (rank > registers[register])
+			registers[register] = (byte) rank;
+	}
+
+	/**
+	 * Adds all values of another sketch to this sketch.
+	 *
+	 * @param other the sketch to merge
+	 */
+	public void merge(HyperLogLog other) {
+		for (int i = 0; i < REGISTERS; ++i) {
+			if (other.registers[i] > registers[i])
+				registers[i] = other.registers[i];
+		}
+	}
+
+	/**
+	 * Returns the estimated number of distinct values added.
+	 *
+	 * @return the distinct count estimate
+	 */
+	public long estimate() {
+		double sum = 0;
+		int zeros = 0;
+		for (byte rank : registers) {
+			sum += 1.0 / (1L << rank);
+			if (rank == 0)
+				zeros++;
+		}
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		// linear counting is more accurate for small cardinalities
+		if (estimate <= 2.5 * REGISTERS && zeros > 0)
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Spreads a 32 bit hash code into a 64 bit hash value.
+	 *
+	 * @param hashCode the hash code, e.g. of a string
+	 * @return a hash value suitable for {@link #add(long)}
+	 */
+	public static long spread(int hashCode) {
+		// finalizer of MurmurHash3
+		long h = hashCode * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
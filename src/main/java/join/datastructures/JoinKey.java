@@ -0,0 +1,150 @@
+package join.datastructures;
+
+import java.util.Objects;
+
+/**
+ * The normalized form of a join attribute value, so that joins compare and hash
+ * primitives instead of strings.
+ *
+ * Values that consist of a short ASCII prefix followed by a number, like
+ * <tt>tt0000001</tt>, <tt>nm0000001</tt> or <tt>1894</tt>, are stored as a tag
+ * (prefix and digit count) and the number. All other values fall back to the
+ * string. Two keys are equal, if and only if their values are equal. The hash
+ * code is computed once, when the key is created.
+ *
+ * Keys are ordered by tag and number, normalized keys before fallback keys, so
+ * that values with the same prefix and digit count are ordered like strings.
+ */
+public final class JoinKey implements Comparable<JoinKey> {
+
+	private static final int MAX_PREFIX_LENGTH = 3;
+	private static final int MAX_DIGITS = 18;
+	private static final int FALLBACK = -1;
+
+	private final int tag;
+	private final long number;
+	private final String value;
+	private final int hash;
+
+	private JoinKey(int tag, long number, String value) {
+		this.tag = tag;
+		this.number = number;
+		this.value = value;
+		this.hash = value == null ? mix(number * 0x9E3779B97F4A7C15L + tag) : mix(value.hashCode());
+	}
+
+	/**
+	 * Normalizes the given attribute value.
+	 *
+	 * @param value the attribute value
+	 * @return the key of the value
+	 */
+	public static JoinKey of(String value) {
+		Objects.requireNonNull(value, "value must not be null");
+
+		int length = value.length();
+		int digitsStart = 0;
+		int tag = 0;
+		while (digitsStart < length && !isDigit(value.charAt(digitsStart))) {
+			char c = value.charAt(digitsStart);
+			if (digitsStart == MAX_PREFIX_LENGTH || c == 0 || c > 0x7F)
+				return new JoinKey(FALLBACK, 0, value);
+			tag |= c << (7 * (MAX_PREFIX_LENGTH - 1 - digitsStart));
+			digitsStart++;
+		}
+
+		int digits = length - digitsStart;
+		if (digits == 0 || digits > MAX_DIGITS)
+			return new JoinKey(FALLBACK, 0, value);
+		long number = 0;
+		for (int i = digitsStart; i < length; ++i) {
+			char c = value.charAt(i);
+			if (!isDigit(c))
+				return new JoinKey(FALLBACK, 0, value);
+			number = 10 * number + (c - '0');
+		}
+		// the digit count keeps leading zeros apart, e.g. tt01 and tt001
+		return new JoinKey(digits << (7 * MAX_PREFIX_LENGTH) | tag, number, null);
+	}
+
+	/**
+	 * Returns whether the key could be normalized, or falls back to its string.
+	 *
+	 * @return <tt>true</tt>, if the key is stored as primitives
+	 */
+	public boolean isNormalized() {
+		return value == null;
+	}
+
+	/**
+	 * Returns a hash code of the key that is independent of {@link #hashCode()}
+	 * and of the hash codes with other seeds.
+	 *
+	 * @param seed the seed of the hash function
+	 * @return the seeded hash code
+	 */
+	public int hashCode(int seed) {
+		long base = value == null ? number * 0x9E3779B97F4A7C15L + tag : value.hashCode();
+		return mix(base ^ (seed + 1) * 0xC2B2AE3D27D4EB4FL);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof JoinKey))
+			return false;
+		JoinKey other = (JoinKey) obj;
+		return hash == other.hash && tag == other.tag && number == other.number
+				&& (value == null || value.equals(other.value));
+	}
+
+	@Override
+	public int compareTo(JoinKey other) {
+		if (value != null || other.value != null) {
+			if (value == null)
+				return -1;
+			if (other.value == null)
+				return 1;
+			return value.compareTo(other.value);
+		}
+		int cmp = Integer.compare(tag, other.tag);
+		return cmp != 0 ? cmp : Long.compare(number, other.number);
+	}
+
+	@Override
+	public String toString() {
+		if (value != null)
+			return value;
+		StringBuilder builder = new StringBuilder();
+		for (int i = MAX_PREFIX_LENGTH - 1; i >= 0; --i) {
+			char c = (char) (tag >>> (7 * i) & 0x7F);
+			if (c != 0)
+				builder.append(c);
+		}
+		String digits = Long.toString(number);
+		int width = tag >>> (7 * MAX_PREFIX_LENGTH);
+		for (int i = digits.length(); i < width; ++i)
+			builder.append('0');
+		return builder.append(digits).toString();
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int mix(long h) {
+		// finalizer of MurmurHash3, spreads all bits into the lower ones
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+}
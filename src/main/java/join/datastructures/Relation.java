@@ -14,10 +14,14 @@ import join.manager.BlockManager;
  * 
  * A relation can be in-memory, in which case its block are only maintained as
  * long they are pinned.
+ * 
+ * Several threads may request free blocks concurrently, but a relation must not
+ * be iterated while blocks are still added to it.
  */
 public final class Relation implements Iterable<Block> {
 	private final List<Block> blocks;
 	private final boolean inMemory;
+	private volatile RelationStatistics statistics;
 
 	/**
 	 * Constructs a new relation that will not be in-memory.
@@ -41,7 +45,7 @@ public final class Relation implements Iterable<Block> {
 		return Iterators.unmodifiableIterator(blocks.iterator());
 	}
 
-	public Block getFreeBlock(BlockManager blockManager) {
+	public synchronized Block getFreeBlock(BlockManager blockManager) {
 		Objects.requireNonNull(blockManager, "block manager must not be null");
 
 		Block b = blockManager.getFreeBlock(inMemory);
@@ -49,7 +53,47 @@ public final class Relation implements Iterable<Block> {
 		return b;
 	}
 
-	public int getBlockCount() {
+	/**
+	 * Moves all blocks of another relation to the end of this relation. The other
+	 * relation is empty afterwards.
+	 * 
+	 * @param segment The relation to take the blocks from.
+	 */
+	public synchronized void append(Relation segment) {
+		Objects.requireNonNull(segment, "segment must not be null");
+		if (segment.inMemory != inMemory)
+			throw new IllegalArgumentException("cannot mix in-memory and regular blocks");
+
+		synchronized (segment) {
+			blocks.addAll(segment.blocks);
+			segment.blocks.clear();
+		}
+	}
+
+	/**
+	 * Returns the block at a position of this relation.
+	 * 
+	 * @param index The position of the block, starting at 0.
+	 * @return the block
+	 */
+	public synchronized Block getBlock(int index) {
+		return blocks.get(index);
+	}
+
+	public synchronized int getBlockCount() {
 		return blocks.size();
 	}
+
+	/**
+	 * Returns the statistics of this relation, if they were gathered.
+	 * 
+	 * @return the statistics, or <tt>null</tt>
+	 */
+	public RelationStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void setStatistics(RelationStatistics statistics) {
+		this.statistics = statistics;
+	}
 }
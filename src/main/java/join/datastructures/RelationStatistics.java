@@ -0,0 +1,219 @@
+package join.datastructures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Statistics of a relation: its tuple and block count and, for every attribute,
+ * an estimate of the distinct count, an equi-depth histogram and the most
+ * frequent values.
+ *
+ * The statistics are gathered with a {@link Collector} while the relation is
+ * loaded, in one pass and constant space per attribute.
+ */
+public final class RelationStatistics {
+
+	private static final int HEAVY_HITTER_CAPACITY = 32;
+	private static final int SAMPLE_SIZE = 256;
+	private static final int HISTOGRAM_BUCKETS = 8;
+
+	private final long tupleCount;
+	private final int blockCount;
+	private final AttributeStatistics[] attributes;
+
+	private RelationStatistics(long tupleCount, int blockCount, AttributeStatistics[] attributes) {
+		this.tupleCount = tupleCount;
+		this.blockCount = blockCount;
+		this.attributes = attributes;
+	}
+
+	public long getTupleCount() {
+		return tupleCount;
+	}
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	public int getAttributeCount() {
+		return attributes.length;
+	}
+
+	/**
+	 * Returns the statistics of an attribute.
+	 *
+	 * @param attribute The attribute index.
+	 * @return the statistics of the attribute, or <tt>null</tt>, if no tuple has
+	 *         the attribute
+	 */
+	public AttributeStatistics getAttribute(int attribute) {
+		return attribute >= 0 && attribute < attributes.length ? attributes[attribute] : null;
+	}
+
+	@Override
+	public String toString() {
+		return "RelationStatistics [tuples=" + tupleCount + ", blocks=" + blockCount + "]";
+	}
+
+	/**
+	 * Statistics of one attribute of a relation.
+	 */
+	public static final class AttributeStatistics {
+		private final long distinctCount;
+		private final List<String> histogram;
+		private final Map<String, Long> heavyHitters;
+
+		private AttributeStatistics(long distinctCount, List<String> histogram, Map<String, Long> heavyHitters) {
+			this.distinctCount = distinctCount;
+			this.histogram = histogram;
+			this.heavyHitters = heavyHitters;
+		}
+
+		/**
+		 * Returns the estimated number of distinct values.
+		 *
+		 * @return the distinct count, at least 1
+		 */
+		public long getDistinctCount() {
+			return distinctCount;
+		}
+
+		/**
+		 * Returns the bucket boundaries of an equi-depth histogram, ordered by
+		 * {@link JoinKey}. Each of the buckets between two consecutive boundaries
+		 * holds about the same number of tuples.
+		 *
+		 * @return the histogram boundaries, estimated from a sample
+		 */
+		public List<String> getHistogram() {
+			return histogram;
+		}
+
+		/**
+		 * Returns the most frequent values, see
+		 * {@link HeavyHitterSketch#getHeavyHitters()}.
+		 *
+		 * @return the frequent values and their estimated counts, most frequent first
+		 */
+		public Map<String, Long> getHeavyHitters() {
+			return heavyHitters;
+		}
+
+		@Override
+		public String toString() {
+			return "AttributeStatistics [distinct=" + distinctCount + ", histogram=" + histogram + ", heavyHitters="
+					+ heavyHitters + "]";
+		}
+	}
+
+	/**
+	 * Gathers statistics from the tuples added to it. Collectors of parts of a
+	 * relation can be merged.
+	 */
+	public static final class Collector {
+		private final List<HyperLogLog> distinct = new ArrayList<>();
+		private final List<HeavyHitterSketch<String>> frequent = new ArrayList<>();
+		// a sample of the tuples, the ones with the smallest random priorities
+		private final PriorityQueue<Sampled> sample = new PriorityQueue<>(
+				Comparator.comparingDouble((Sampled s) -> s.priority).reversed());
+		private long tupleCount;
+
+		public void add(Tuple tuple) {
+			tupleCount++;
+			for (int i = 0; i < tuple.getAttributeCount(); ++i) {
+				if (i == distinct.size()) {
+					distinct.add(new HyperLogLog());
+					frequent.add(new HeavyHitterSketch<>(HEAVY_HITTER_CAPACITY));
+				}
+				String value = tuple.getData(i);
+				distinct.get(i).add(HyperLogLog.spread(value.hashCode()));
+				frequent.get(i).add(value);
+			}
+
+			double priority = ThreadLocalRandom.current().nextDouble();
+			if (sample.size() < SAMPLE_SIZE) {
+				sample.add(new Sampled(priority, tuple));
+			} else if (priority < sample.peek().priority) {
+				sample.poll();
+				sample.add(new Sampled(priority, tuple));
+			}
+		}
+
+		/**
+		 * Adds the statistics of another collector to this collector.
+		 *
+		 * @param other the collector to merge
+		 */
+		public void merge(Collector other) {
+			tupleCount += other.tupleCount;
+			for (int i = 0; i < other.distinct.size(); ++i) {
+				if (i == distinct.size()) {
+					distinct.add(other.distinct.get(i));
+					frequent.add(other.frequent.get(i));
+				} else {
+					distinct.get(i).merge(other.distinct.get(i));
+					frequent.get(i).merge(other.frequent.get(i));
+				}
+			}
+			for (Sampled sampled : other.sample) {
+				if (sample.size() < SAMPLE_SIZE) {
+					sample.add(sampled);
+				} else if (sampled.priority < sample.peek().priority) {
+					sample.poll();
+					sample.add(sampled);
+				}
+			}
+		}
+
+		/**
+		 * Creates the statistics of the tuples added so far.
+		 *
+		 * @param blockCount The number of blocks of the relation.
+		 * @return the statistics
+		 */
+		public RelationStatistics build(int blockCount) {
+			AttributeStatistics[] attributes = new AttributeStatistics[distinct.size()];
+			for (int i = 0; i < attributes.length; ++i) {
+				long distinctCount = Math.max(1, Math.min(tupleCount, distinct.get(i).estimate()));
+				attributes[i] = new AttributeStatistics(distinctCount, buildHistogram(i),
+						Collections.unmodifiableMap(frequent.get(i).getHeavyHitters()));
+			}
+			return new RelationStatistics(tupleCount, blockCount, attributes);
+		}
+
+		private List<String> buildHistogram(int attribute) {
+			List<JoinKey> keys = new ArrayList<>(sample.size());
+			for (Sampled sampled : sample) {
+				if (attribute < sampled.tuple.getAttributeCount())
+					keys.add(JoinKey.of(sampled.tuple.getData(attribute)));
+			}
+			if (keys.isEmpty())
+				return Collections.emptyList();
+			Collections.sort(keys);
+
+			int buckets = Math.min(HISTOGRAM_BUCKETS, keys.size());
+			String[] bounds = new String[buckets + 1];
+			for (int i = 0; i < buckets; ++i) {
+				bounds[i] = keys.get(i * keys.size() / buckets).toString();
+			}
+			bounds[buckets] = keys.get(keys.size() - 1).toString();
+			return Collections.unmodifiableList(Arrays.asList(bounds));
+		}
+	}
+
+	private static final class Sampled {
+		private final double priority;
+		private final Tuple tuple;
+
+		private Sampled(double priority, Tuple tuple) {
+			this.priority = priority;
+			this.tuple = tuple;
+		}
+	}
+}
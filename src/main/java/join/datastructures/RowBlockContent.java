@@ -0,0 +1,75 @@
+package join.datastructures;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Block content that keeps a list of tuples.
+ */
+final class RowBlockContent implements BlockContent {
+
+	private final List<Tuple> tuples;
+	private int currentSize;
+
+	RowBlockContent() {
+		this.tuples = new ArrayList<>();
+		this.currentSize = 0;
+	}
+
+	@Override
+	public boolean add(Tuple tuple, int maxSize) {
+		int tupleSize = tuple.getSizeInBytes();
+		if (currentSize + tupleSize <= maxSize) {
+			tuples.add(tuple);
+			currentSize += tupleSize;
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Iterator<Tuple> iterator() {
+		return tuples.iterator();
+	}
+
+	@Override
+	public int size() {
+		return tuples.size();
+	}
+
+	@Override
+	public int getSizeInBytes() {
+		return currentSize;
+	}
+
+	@Override
+	public void clear() {
+		tuples.clear();
+		currentSize = 0;
+	}
+
+	@Override
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putInt(tuples.size());
+		for (Tuple tuple : tuples) {
+			buffer.putInt(tuple.getAttributeCount());
+			for (int i = 0; i < tuple.getAttributeCount(); ++i) {
+				BlockContent.writeString(buffer, tuple.getData(i));
+			}
+		}
+	}
+
+	@Override
+	public void readFrom(ByteBuffer buffer) {
+		int tupleCount = buffer.getInt();
+		for (int t = 0; t < tupleCount; ++t) {
+			String[] data = new String[buffer.getInt()];
+			for (int i = 0; i < data.length; ++i) {
+				data[i] = BlockContent.readString(buffer);
+			}
+			add(new Tuple(data), Integer.MAX_VALUE);
+		}
+	}
+}
@@ -5,28 +5,139 @@ import java.util.Objects;
 
 /**
  * A very simple tuple that can only contain Strings, indexed by position.
+ * 
+ * A tuple can also be a view of two other tuples, see
+ * {@link #concat(Tuple, Tuple)}. It then reads its attributes from them instead
+ * of holding a copy.
  */
 public final class Tuple {
 
 	private static final int CONSTANT_COST = 4;
 
+	// the attributes, or null for the concatenation of left and right
 	private final String[] data;
+	private final Tuple left;
+	private final Tuple right;
+	private final int leftCount;
+	// normalized keys, created on first use of an attribute as join key
+	private JoinKey[] keys;
 
 	public Tuple(String[] data) {
+		this(Arrays.copyOf(Objects.requireNonNull(data, "data must not be null"), data.length), null, null);
+	}
+
+	private Tuple(String[] data, Tuple left, Tuple right) {
+		this.data = data;
+		this.left = left;
+		this.right = right;
+		this.leftCount = left == null ? 0 : left.getAttributeCount();
+	}
+
+	/**
+	 * Creates a tuple that takes over the given array instead of copying it. The
+	 * caller must not modify the array afterwards.
+	 * 
+	 * @param data The attribute values.
+	 * @return the tuple
+	 */
+	public static Tuple wrap(String[] data) {
 		Objects.requireNonNull(data, "data must not be null");
 
-		this.data = Arrays.copyOf(data, data.length);
+		return new Tuple(data, null, null);
+	}
+
+	/**
+	 * Creates a tuple with the attributes of <tt>left</tt> followed by the
+	 * attributes of <tt>right</tt>, without copying them. The tuple reads its
+	 * attributes from both tuples, until it is {@link #materialize()}d.
+	 * 
+	 * @param left  The tuple with the first attributes.
+	 * @param right The tuple with the last attributes.
+	 * @return the concatenated tuple
+	 */
+	public static Tuple concat(Tuple left, Tuple right) {
+		Objects.requireNonNull(left, "left tuple must not be null");
+		Objects.requireNonNull(right, "right tuple must not be null");
+
+		return new Tuple(null, left, right);
+	}
+
+	/**
+	 * Returns whether this tuple is a view created by
+	 * {@link #concat(Tuple, Tuple)}.
+	 * 
+	 * @return whether this tuple is a concatenation
+	 */
+	public boolean isConcatenation() {
+		return data == null;
+	}
+
+	/**
+	 * Returns the tuple with the first attributes of a concatenation.
+	 * 
+	 * @return the left tuple, or <tt>null</tt>, if this tuple is no concatenation
+	 */
+	public Tuple getLeft() {
+		return left;
+	}
+
+	/**
+	 * Returns the tuple with the last attributes of a concatenation.
+	 * 
+	 * @return the right tuple, or <tt>null</tt>, if this tuple is no concatenation
+	 */
+	public Tuple getRight() {
+		return right;
+	}
+
+	/**
+	 * Returns a tuple that holds its own copy of the attributes, e.g. to keep a
+	 * concatenation without keeping the tuples it was created from.
+	 * 
+	 * @return this tuple, if it is no concatenation, otherwise an equal tuple
+	 *         with an array of the attributes
+	 */
+	public Tuple materialize() {
+		if (data != null)
+			return this;
+		String[] values = new String[getAttributeCount()];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = getData(i);
+		}
+		return wrap(values);
 	}
 
 	public String getData(int pos) {
-		return data[pos];
+		if (data != null)
+			return data[pos];
+		return pos < leftCount ? left.getData(pos) : right.getData(pos - leftCount);
+	}
+
+	/**
+	 * Returns the normalized join key of an attribute. The key is created once and
+	 * cached in the tuple.
+	 *
+	 * @param pos the attribute index
+	 * @return the key of the attribute value
+	 */
+	public JoinKey getKey(int pos) {
+		// racing threads may both create a key, but they create equal ones
+		JoinKey[] cache = keys;
+		if (cache == null)
+			keys = cache = new JoinKey[getAttributeCount()];
+		JoinKey key = cache[pos];
+		if (key == null)
+			cache[pos] = key = JoinKey.of(getData(pos));
+		return key;
 	}
 
 	public int getAttributeCount() {
-		return data.length;
+		return data != null ? data.length : leftCount + right.getAttributeCount();
 	}
 
 	public int getSizeInBytes() {
+		if (data == null)
+			return left.getSizeInBytes() + right.getSizeInBytes() - CONSTANT_COST;
 		int size = CONSTANT_COST;
 		for (String s : data) {
 			size += s.length() + CONSTANT_COST;
@@ -36,17 +147,31 @@ public final class Tuple {
 
 	@Override
 	public String toString() {
-		return "Tuple [data=" + Arrays.toString(data) + "]";
+		return "Tuple [data=" + Arrays.toString(materialize().data) + "]";
 	}
 
 	@Override
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.hashCode(data);
+		result = prime * result + (data != null ? Arrays.hashCode(data) : hashAttributes(1));
 		return result;
 	}
 
+	/**
+	 * Continues {@link Arrays#hashCode(Object[])} of the attributes of a
+	 * concatenation, starting with the given hash.
+	 */
+	private int hashAttributes(int hash) {
+		if (data != null) {
+			for (String s : data) {
+				hash = 31 * hash + s.hashCode();
+			}
+			return hash;
+		}
+		return right.hashAttributes(left.hashAttributes(hash));
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -56,8 +181,15 @@ public final class Tuple {
 		if (getClass() != obj.getClass())
 			return false;
 		Tuple other = (Tuple) obj;
-		if (!Arrays.equals(data, other.data))
+		if (data != null && other.data != null)
+			return Arrays.equals(data, other.data);
+		int count = getAttributeCount();
+		if (count != other.getAttributeCount())
 			return false;
+		for (int i = 0; i < count; ++i) {
+			if (!getData(i).equals(other.getData(i)))
+				return false;
+		}
 		return true;
 	}
 
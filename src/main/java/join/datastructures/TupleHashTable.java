@@ -0,0 +1,149 @@
+package join.datastructures;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory hash table on one attribute of tuples. Every distinct normalized
+ * {@link JoinKey} takes one slot of an open-addressing table with linear
+ * probing, with its hash code cached next to it, and the tuples with that key
+ * are chained in insertion order. Adding a tuple thus only probes the distinct
+ * keys and appends to its chain, and a lookup only visits the tuples of its key,
+ * however many tuples share a key.
+ *
+ * The table only references the tuples, the blocks they are stored in have to
+ * stay pinned as long as the table is used.
+ */
+public final class TupleHashTable {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final int attribute;
+
+	// the distinct keys, their hash codes and the first and last tuple of their chains
+	private JoinKey[] keys;
+	private int[] hashes;
+	private int[] heads;
+	private int[] tails;
+	private int keyCount;
+
+	// the tuples in insertion order and the next tuple with the same key, or -1
+	private Tuple[] tuples;
+	private int[] next;
+	private int size;
+
+	/**
+	 * Constructs a new hash table.
+	 *
+	 * @param attribute    The attribute index the tuples are hashed on.
+	 * @param expectedSize The expected number of tuples.
+	 */
+	public TupleHashTable(int attribute, int expectedSize) {
+		this.attribute = attribute;
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * expectedSize) {
+			capacity <<= 1;
+		}
+		this.keys = new JoinKey[capacity];
+		this.hashes = new int[capacity];
+		this.heads = new int[capacity];
+		this.tails = new int[capacity];
+		this.tuples = new Tuple[Math.max(MIN_CAPACITY, expectedSize)];
+		this.next = new int[tuples.length];
+	}
+
+	public void add(Tuple tuple) {
+		Objects.requireNonNull(tuple, "tuple must not be null");
+
+		if (size == tuples.length) {
+			tuples = Arrays.copyOf(tuples, 2 * size);
+			next = Arrays.copyOf(next, 2 * size);
+		}
+		tuples[size] = tuple;
+		next[size] = -1;
+
+		JoinKey key = tuple.getKey(attribute);
+		int hash = key.hashCode();
+		int slot = find(key, hash);
+		if (keys[slot] != null) {
+			next[tails[slot]] = size;
+			tails[slot] = size;
+		} else {
+			keys[slot] = key;
+			hashes[slot] = hash;
+			heads[slot] = size;
+			tails[slot] = size;
+			keyCount++;
+			if (2 * keyCount > keys.length) {
+				resize();
+			}
+		}
+		size++;
+	}
+
+	/**
+	 * Calls the action for every tuple with the given key.
+	 *
+	 * @param key    the key to look up
+	 * @param action the action to call for each matching tuple
+	 */
+	public void forEachMatch(JoinKey key, Consumer<Tuple> action) {
+		int slot = find(key, key.hashCode());
+		if (keys[slot] == null)
+			return;
+		for (int i = heads[slot]; i >= 0; i = next[i]) {
+			action.accept(tuples[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all tuples, but keeps the allocated capacity.
+	 */
+	public void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(tuples, 0, size, null);
+		keyCount = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns the slot of the key, or the empty slot it would be inserted into.
+	 */
+	private int find(JoinKey key, int hash) {
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+		while (keys[slot] != null && (hashes[slot] != hash || !key.equals(keys[slot]))) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void resize() {
+		JoinKey[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		int[] oldHeads = heads;
+		int[] oldTails = tails;
+		keys = new JoinKey[oldKeys.length << 1];
+		hashes = new int[keys.length];
+		heads = new int[keys.length];
+		tails = new int[keys.length];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (keys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = oldKeys[i];
+			hashes[slot] = oldHashes[i];
+			heads[slot] = oldHeads[i];
+			tails[slot] = oldTails[i];
+		}
+	}
+}
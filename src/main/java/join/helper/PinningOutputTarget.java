@@ -1,5 +1,8 @@
 package join.helper;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import join.datastructures.Block;
 import join.datastructures.Relation;
 import join.datastructures.Tuple;
@@ -10,9 +13,14 @@ import join.manager.BlockManager;
  * dealing with requesting new blocks, as well as pinning and unpinning of
  * blocks.
  * 
+ * Full blocks are written in the background with
+ * {@link BlockManager#unpinAsync(Block)}, while the next block is filled. At
+ * most one block is written at a time, and closing the target waits for it.
+ * 
  */
 public class PinningOutputTarget implements AutoCloseable {
 	private Block currentBlock;
+	private CompletableFuture<Void> written = CompletableFuture.completedFuture(null);
 	private final Relation relation;
 	private final BlockManager blockManager;
 	private final boolean release;
@@ -49,7 +57,8 @@ public class PinningOutputTarget implements AutoCloseable {
 	public void addTuple(Tuple t) {
 		if (!currentBlock.addTuple(t)) {
 			if (release) {
-				blockManager.unpin(currentBlock);
+				awaitWrite();
+				written = blockManager.unpinAsync(currentBlock);
 			}
 			currentBlock = relation.getFreeBlock(blockManager);
 			blockManager.pin(currentBlock);
@@ -59,10 +68,22 @@ public class PinningOutputTarget implements AutoCloseable {
 		}
 	}
 
+	private void awaitWrite() {
+		try {
+			written.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
 	@Override
 	public void close() {
 		if (release && currentBlock != null) {
 			blockManager.unpin(currentBlock);
+			currentBlock = null;
 		}
+		awaitWrite();
 	}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package join.helper;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import join.datastructures.Block;
 import join.datastructures.Tuple;
@@ -8,42 +9,66 @@ import join.manager.BlockManager;
 
 /**
  * This iterator wraps a Block iterator and makes sure that the relevant blocks
- * are pinned and unpinned.
+ * are pinned and unpinned. It can read the next blocks in the background, while
+ * the tuples of the current block are consumed, see
+ * {@link ReadAheadBlockIterator}.
  * 
  */
 public class PinningTupleIterator implements Iterator<Tuple>, AutoCloseable {
 
 	private Block currentBlock = null;
 	private Iterator<Tuple> current = null;
-	private final Iterator<Block> iter;
+	private final ReadAheadBlockIterator iter;
 	private final BlockManager blockManager;
 
 	public PinningTupleIterator(Iterator<Block> iter, BlockManager blockManager) {
-		this.iter = iter;
+		this(iter, blockManager, 0, 0);
+	}
+
+	/**
+	 * Constructs an iterator that reads blocks ahead.
+	 * 
+	 * @param iter         The blocks to iterate over.
+	 * @param blockManager The block manager to use.
+	 * @param readAhead    The maximum number of blocks to read ahead.
+	 * @param keepFree     The number of blocks that reading ahead must leave
+	 *                     free.
+	 */
+	public PinningTupleIterator(Iterator<Block> iter, BlockManager blockManager, int readAhead, int keepFree) {
+		this.iter = new ReadAheadBlockIterator(iter, blockManager, readAhead, keepFree);
 		this.blockManager = blockManager;
 	}
 
 	@Override
 	public Tuple next() {
-		if (current == null || !current.hasNext()) {
-			if (currentBlock != null)
-				blockManager.unpin(currentBlock);
-			currentBlock = iter.next();
-			blockManager.pin(currentBlock);
-			current = currentBlock.iterator();
-		}
-
+		if (!hasNext())
+			throw new NoSuchElementException();
 		return current.next();
 	}
 
 	@Override
 	public boolean hasNext() {
-		return iter.hasNext() || (current != null && current.hasNext());
+		// move on to the next block, skipping empty ones
+		while (current == null || !current.hasNext()) {
+			if (!iter.hasNext())
+				return false;
+			if (currentBlock != null) {
+				blockManager.unpin(currentBlock);
+				currentBlock = null;
+			}
+			currentBlock = iter.next();
+			current = currentBlock.iterator();
+		}
+		return true;
 	}
 
 	@Override
 	public void close() {
-		if (currentBlock != null)
+		if (currentBlock != null) {
 			blockManager.unpin(currentBlock);
+			currentBlock = null;
+			current = null;
+		}
+		iter.close();
 	}
-}
\ No newline at end of file
+}
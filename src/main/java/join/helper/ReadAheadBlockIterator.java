@@ -0,0 +1,114 @@
+package join.helper;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import join.datastructures.Block;
+import join.manager.BlockManager;
+
+/**
+ * This iterator wraps a Block iterator and returns its blocks pinned, while it
+ * reads the next blocks in the background with
+ * {@link BlockManager#pinAsync(Block)}. The caller has to unpin every block it
+ * gets from the iterator, and close the iterator to unpin the blocks read
+ * ahead, if it stops early.
+ * 
+ * Blocks read ahead are pinned, so the iterator only reads ahead while more
+ * blocks are free than the caller needs to keep free.
+ */
+public class ReadAheadBlockIterator implements Iterator<Block>, AutoCloseable {
+
+	private final Iterator<Block> iter;
+	private final BlockManager blockManager;
+	private final int readAhead;
+	private final int keepFree;
+	// the blocks read ahead and their reads
+	private final Queue<Block> pending = new ArrayDeque<>();
+	private final Queue<CompletableFuture<Block>> reads = new ArrayDeque<>();
+
+	/**
+	 * Constructs an iterator that reads as many blocks ahead as configured in the
+	 * block manager, see {@link BlockManager#setReadAhead(int)}.
+	 * 
+	 * @param iter         The blocks to iterate over.
+	 * @param blockManager The block manager to use.
+	 * @param keepFree     The number of blocks that must stay free.
+	 */
+	public ReadAheadBlockIterator(Iterator<Block> iter, BlockManager blockManager, int keepFree) {
+		this(iter, blockManager, blockManager.getReadAhead(), keepFree);
+	}
+
+	/**
+	 * Constructs an iterator.
+	 * 
+	 * @param iter         The blocks to iterate over.
+	 * @param blockManager The block manager to use.
+	 * @param readAhead    The maximum number of blocks to read ahead.
+	 * @param keepFree     The number of blocks that must stay free.
+	 */
+	public ReadAheadBlockIterator(Iterator<Block> iter, BlockManager blockManager, int readAhead, int keepFree) {
+		this.iter = iter;
+		this.blockManager = blockManager;
+		this.readAhead = readAhead;
+		this.keepFree = keepFree;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return !pending.isEmpty() || iter.hasNext();
+	}
+
+	/**
+	 * Returns the next block, pinned, and reads the blocks after it in the
+	 * background.
+	 * 
+	 * @return the pinned block
+	 */
+	@Override
+	public Block next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Block block;
+		if (pending.isEmpty()) {
+			block = iter.next();
+			blockManager.pin(block);
+		} else {
+			block = pending.remove();
+			await(block, reads.remove());
+		}
+		while (pending.size() < readAhead && iter.hasNext() && blockManager.getFreeBlockCount() > keepFree) {
+			Block next = iter.next();
+			reads.add(blockManager.pinAsync(next));
+			pending.add(next);
+		}
+		return block;
+	}
+
+	private void await(Block block, CompletableFuture<Block> read) {
+		try {
+			read.join();
+		} catch (CompletionException e) {
+			// the block is pinned, even if it could not be read
+			blockManager.unpin(block);
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Unpins the blocks that were read ahead, but not returned.
+	 */
+	@Override
+	public void close() {
+		while (!pending.isEmpty()) {
+			reads.remove();
+			// unpinning waits until the block is read
+			blockManager.unpin(pending.remove());
+		}
+	}
+}
@@ -0,0 +1,351 @@
+package join.helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * Reads and writes relations in a binary file format, which is much faster to
+ * load than a TSV file.
+ *
+ * The file starts with a header holding the schema and statistics of the
+ * relation, see {@link Header}. It is followed by one record per block: the
+ * tuple count and the byte length of the block, then its tuples. A tuple is
+ * stored as its attribute count and its attributes, each attribute as the
+ * length of its UTF-8 bytes and the bytes. Counts and lengths are variable-length
+ * integers.
+ *
+ * The reader maps the file and rebuilds the blocks with the same boundaries, as
+ * long as the tuples fit into the blocks of the block manager and the relation
+ * is not scaled. Statistics of the relation are gathered while it is loaded.
+ */
+public class RelationFile {
+
+	/**
+	 * The default file extension of relation files.
+	 */
+	public static final String EXTENSION = ".rel";
+
+	private static final int MAGIC = 0x4A52454C;
+	private static final int VERSION = 1;
+	private static final int MAX_WINDOW_SIZE = 256 << 20;
+
+	private final BlockManager blockManager;
+
+	public RelationFile(BlockManager blockManager) {
+		this.blockManager = blockManager;
+	}
+
+	/**
+	 * Writes a relation to a file. Every block of the relation is pinned once.
+	 *
+	 * @param relation The relation to write.
+	 * @param file     The file to write to, an existing file is replaced.
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Relation relation, Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			int attributeCount = -1;
+			long tupleCount = 0;
+			int blockCount = 0;
+			long[] attributeBytes = new long[0];
+
+			// the header is written again, once the statistics are known
+			channel.position(Header.SIZE_LIMIT);
+			Encoder encoder = new Encoder();
+			for (Block block : relation) {
+				blockManager.pin(block);
+				encoder.clear();
+				int tuples = 0;
+				for (Tuple tuple : block) {
+					int attributes = tuple.getAttributeCount();
+					if (tupleCount + tuples == 0)
+						attributeCount = attributes;
+					else if (attributes != attributeCount)
+						attributeCount = Header.MIXED;
+					if (attributes > attributeBytes.length)
+						attributeBytes = Arrays.copyOf(attributeBytes, attributes);
+
+					encoder.putVarInt(attributes);
+					for (int i = 0; i < attributes; ++i) {
+						attributeBytes[i] += encoder.putString(tuple.getData(i));
+					}
+					tuples++;
+				}
+				blockManager.unpin(block);
+
+				ByteBuffer prefix = ByteBuffer.allocate(8);
+				prefix.putInt(tuples).putInt(encoder.size()).flip();
+				writeFully(channel, prefix);
+				writeFully(channel, encoder.buffer());
+				tupleCount += tuples;
+				blockCount++;
+			}
+
+			Header header = new Header(attributeCount, tupleCount, blockCount, attributeBytes);
+			ByteBuffer buffer = ByteBuffer.allocate(Header.SIZE_LIMIT);
+			header.writeTo(buffer);
+			buffer.flip();
+			channel.position(0);
+			writeFully(channel, buffer);
+		}
+	}
+
+	/**
+	 * Reads the header of a relation file.
+	 *
+	 * @param file The file to read from.
+	 * @return the header of the file
+	 * @throws IOException if the file cannot be read or is no relation file
+	 */
+	public static Header readHeader(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return readHeader(channel);
+		}
+	}
+
+	/**
+	 * Loads a relation from a file. Every tuple is added <tt>scaleFactor</tt>
+	 * times, all copies share the same tuple.
+	 *
+	 * @param file        The file to load.
+	 * @param scaleFactor The number of copies of every tuple.
+	 * @return the loaded relation
+	 * @throws IOException if the file cannot be read or is no relation file
+	 */
+	public Relation load(Path file, int scaleFactor) throws IOException {
+		Relation relation = new Relation();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			Header header = readHeader(channel);
+
+			long position = Header.SIZE_LIMIT;
+			long size = channel.size();
+			ByteBuffer window = ByteBuffer.allocate(0);
+			long windowStart = position;
+			byte[] scratch = new byte[256];
+			Block block = null;
+			RelationStatistics.Collector collector = new RelationStatistics.Collector();
+			for (int b = 0; b < header.getBlockCount(); ++b) {
+				if (position + 8 > windowStart + window.limit()) {
+					window = map(channel, position, 8, size);
+					windowStart = position;
+				}
+				window.position((int) (position - windowStart));
+				int tuples = window.getInt();
+				int length = window.getInt();
+				if (position + 8 + length > windowStart + window.limit()) {
+					window = map(channel, position, 8 + length, size);
+					windowStart = position;
+					window.position(8);
+				}
+
+				// every stored block becomes a block of its own, unless the relation is scaled or the tuples do not fit
+				if (block == null || scaleFactor == 1) {
+					if (block != null)
+						blockManager.unpin(block);
+					block = relation.getFreeBlock(blockManager);
+					blockManager.pin(block);
+				}
+				for (int t = 0; t < tuples; ++t) {
+					String[] data = new String[readVarInt(window)];
+					for (int i = 0; i < data.length; ++i) {
+						int bytes = readVarInt(window);
+						if (bytes > scratch.length)
+							scratch = new byte[Math.max(bytes, 2 * scratch.length)];
+						window.get(scratch, 0, bytes);
+						data[i] = new String(scratch, 0, bytes, StandardCharsets.UTF_8);
+					}
+					Tuple tuple = Tuple.wrap(data);
+					for (int i = 0; i < scaleFactor; ++i) {
+						collector.add(tuple);
+						if (!block.addTuple(tuple)) {
+							blockManager.unpin(block);
+							block = relation.getFreeBlock(blockManager);
+							blockManager.pin(block);
+							if (!block.addTuple(tuple)) {
+								blockManager.unpin(block);
+								throw new IllegalStateException("block size too small");
+							}
+						}
+					}
+				}
+				position += 8 + length;
+			}
+			if (block != null)
+				blockManager.unpin(block);
+			relation.setStatistics(collector.build(relation.getBlockCount()));
+		}
+		return relation;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, int minSize, long fileSize)
+			throws IOException {
+		long size = Math.min(fileSize - position, Math.max(minSize, MAX_WINDOW_SIZE));
+		if (size < minSize)
+			throw new IOException("truncated relation file");
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	private static Header readHeader(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Header.SIZE_LIMIT);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0)
+				throw new IOException("truncated relation file");
+		}
+		buffer.flip();
+		return Header.readFrom(buffer);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * The schema and statistics of a relation file.
+	 */
+	public static final class Header {
+		/**
+		 * The attribute count of relations, whose tuples have different attribute
+		 * counts.
+		 */
+		public static final int MIXED = -1;
+
+		// the header occupies a fixed area, so it can be written after the blocks
+		private static final int SIZE_LIMIT = 4096;
+		private static final int MAX_ATTRIBUTES = (SIZE_LIMIT - 32) / 8;
+
+		private final int attributeCount;
+		private final long tupleCount;
+		private final int blockCount;
+		private final long[] attributeBytes;
+
+		private Header(int attributeCount, long tupleCount, int blockCount, long[] attributeBytes) {
+			this.attributeCount = attributeCount;
+			this.tupleCount = tupleCount;
+			this.blockCount = blockCount;
+			this.attributeBytes = attributeBytes;
+		}
+
+		/**
+		 * Returns the number of attributes of every tuple.
+		 *
+		 * @return the attribute count, or {@link #MIXED}
+		 */
+		public int getAttributeCount() {
+			return attributeCount;
+		}
+
+		public long getTupleCount() {
+			return tupleCount;
+		}
+
+		public int getBlockCount() {
+			return blockCount;
+		}
+
+		/**
+		 * Returns the average size of an attribute value.
+		 *
+		 * @param attribute The attribute index.
+		 * @return the average size in UTF-8 bytes over all tuples
+		 */
+		public double getAverageAttributeSize(int attribute) {
+			if (tupleCount == 0 || attribute >= attributeBytes.length)
+				return 0;
+			return (double) attributeBytes[attribute] / tupleCount;
+		}
+
+		private void writeTo(ByteBuffer buffer) {
+			if (attributeBytes.length > MAX_ATTRIBUTES)
+				throw new IllegalStateException("too many attributes for a relation file");
+			buffer.putInt(MAGIC).putInt(VERSION);
+			buffer.putInt(attributeCount).putLong(tupleCount).putInt(blockCount);
+			buffer.putInt(attributeBytes.length);
+			for (long bytes : attributeBytes) {
+				buffer.putLong(bytes);
+			}
+		}
+
+		private static Header readFrom(ByteBuffer buffer) throws IOException {
+			if (buffer.getInt() != MAGIC)
+				throw new IOException("not a relation file");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException("unsupported relation file version " + version);
+			int attributeCount = buffer.getInt();
+			long tupleCount = buffer.getLong();
+			int blockCount = buffer.getInt();
+			long[] attributeBytes = new long[buffer.getInt()];
+			for (int i = 0; i < attributeBytes.length; ++i) {
+				attributeBytes[i] = buffer.getLong();
+			}
+			return new Header(attributeCount, tupleCount, blockCount, attributeBytes);
+		}
+	}
+
+	/**
+	 * A growable buffer for the content of one block.
+	 */
+	private static final class Encoder {
+		private byte[] bytes = new byte[4096];
+		private int size;
+
+		private void clear() {
+			size = 0;
+		}
+
+		private int size() {
+			return size;
+		}
+
+		private ByteBuffer buffer() {
+			return ByteBuffer.wrap(bytes, 0, size);
+		}
+
+		private void putVarInt(int value) {
+			ensureCapacity(5);
+			while ((value & ~0x7F) != 0) {
+				bytes[size++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			bytes[size++] = (byte) value;
+		}
+
+		private int putString(String value) {
+			byte[] data = value.getBytes(StandardCharsets.UTF_8);
+			putVarInt(data.length);
+			ensureCapacity(data.length);
+			System.arraycopy(data, 0, bytes, size, data.length);
+			size += data.length;
+			return data.length;
+		}
+
+		private void ensureCapacity(int additional) {
+			if (size + additional > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(size + additional, 2 * bytes.length));
+		}
+	}
+}
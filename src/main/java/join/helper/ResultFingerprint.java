@@ -0,0 +1,100 @@
+package join.helper;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import join.algorithms.JoinSink;
+import join.datastructures.Tuple;
+
+/**
+ * A fingerprint of a multiset of tuples that is computed while the tuples pass
+ * through it as a consumer, in constant memory. Every tuple is hashed to 128
+ * bits, and the fingerprint is the sum of these hashes, which does not depend
+ * on the order of the tuples but on how often each tuple occurs. Two results
+ * with equal fingerprints and counts are equal, unless their hash sums collide,
+ * which is as unlikely as a 128-bit hash collision for results that are not
+ * crafted to collide.
+ *
+ * Tuples can be added by several threads at once. Join results can also be
+ * added as pairs of tuples, which are hashed like their concatenation.
+ */
+public final class ResultFingerprint implements Consumer<Tuple>, JoinSink {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder low = new LongAdder();
+	private final LongAdder high = new LongAdder();
+
+	@Override
+	public void accept(Tuple tuple) {
+		Hasher hasher = HASH.newHasher();
+		hasher.putInt(tuple.getAttributeCount());
+		putAttributes(hasher, tuple);
+		add(hasher);
+	}
+
+	@Override
+	public void accept(Tuple[] left, Tuple[] right, int count) {
+		for (int i = 0; i < count; ++i) {
+			Hasher hasher = HASH.newHasher();
+			hasher.putInt(left[i].getAttributeCount() + right[i].getAttributeCount());
+			putAttributes(hasher, left[i]);
+			putAttributes(hasher, right[i]);
+			add(hasher);
+		}
+	}
+
+	private static void putAttributes(Hasher hasher, Tuple tuple) {
+		for (int i = 0; i < tuple.getAttributeCount(); ++i) {
+			// the length separates the attributes, so that ["ab", "c"] differs from ["a", "bc"]
+			String value = tuple.getData(i);
+			hasher.putInt(value.length());
+			hasher.putUnencodedChars(value);
+		}
+	}
+
+	private void add(Hasher hasher) {
+		byte[] hash = hasher.hash().asBytes();
+		count.increment();
+		low.add(toLong(hash, 0));
+		high.add(toLong(hash, 8));
+	}
+
+	private static long toLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = offset + 7; i >= offset; --i) {
+			value = (value << 8) | (bytes[i] & 0xFF);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the number of tuples added.
+	 *
+	 * @return the number of tuples
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns whether both fingerprints were computed from the same multiset of
+	 * tuples, with a negligible chance of a false positive.
+	 *
+	 * @param other the fingerprint to compare with
+	 * @return whether the counts and the hash sums are equal
+	 */
+	public boolean matches(ResultFingerprint other) {
+		return getCount() == other.getCount() && low.sum() == other.low.sum() && high.sum() == other.high.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d tuples, fingerprint %016x%016x", getCount(), high.sum(), low.sum());
+	}
+}
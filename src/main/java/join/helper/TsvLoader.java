@@ -0,0 +1,219 @@
+package join.helper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * Loads a relation from a tab-separated file. The file is memory-mapped and cut
+ * into line-aligned chunks, which are parsed in parallel into one relation
+ * segment each. The segments are appended to the relation in file order, so the
+ * relation has the same tuples in the same order as a sequential load.
+ * Statistics of the relation are gathered along the way.
+ *
+ * Fields are split at tabs and are not quoted, like in the IMDb dumps. Empty
+ * lines are skipped, line breaks may be <tt>\n</tt> or <tt>\r\n</tt> and
+ * spaces around a field are removed.
+ */
+public class TsvLoader {
+
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+	private static final int MAX_CHUNK_SIZE = 64 << 20;
+	private static final int CHUNKS_PER_WORKER = 4;
+
+	private final BlockManager blockManager;
+	private final int parallelism;
+
+	/**
+	 * Constructs a new loader.
+	 *
+	 * @param blockManager The block manager to use.
+	 * @param parallelism  The maximum number of chunks parsed at the same time.
+	 */
+	public TsvLoader(BlockManager blockManager, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.blockManager = blockManager;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Loads a relation. Every line is added <tt>scaleFactor</tt> times, all copies
+	 * share the same tuple.
+	 *
+	 * @param file        The file to load.
+	 * @param scaleFactor The number of copies of every line.
+	 * @return the loaded relation
+	 * @throws IOException if the file cannot be read
+	 */
+	public Relation load(Path file, int scaleFactor) throws IOException {
+		Relation relation = new Relation();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long[] bounds = getChunkBounds(channel);
+			int chunks = bounds.length - 1;
+			Relation[] segments = new Relation[chunks];
+			RelationStatistics.Collector[] collectors = new RelationStatistics.Collector[chunks];
+			for (int i = 0; i < chunks; ++i) {
+				segments[i] = new Relation();
+				collectors[i] = new RelationStatistics.Collector();
+			}
+
+			// every worker pins one output block
+			int workers = Math.max(1, Math.min(Math.min(parallelism, chunks), blockManager.getFreeBlockCount()));
+			AtomicInteger next = new AtomicInteger();
+			Runnable worker = () -> {
+				int i;
+				while ((i = next.getAndIncrement()) < chunks) {
+					parseChunk(channel, bounds[i], bounds[i + 1], segments[i], collectors[i], scaleFactor);
+				}
+			};
+			if (workers == 1) {
+				worker.run();
+			} else {
+				runWorkers(workers, worker);
+			}
+
+			RelationStatistics.Collector collector = new RelationStatistics.Collector();
+			for (int i = 0; i < chunks; ++i) {
+				relation.append(segments[i]);
+				collector.merge(collectors[i]);
+			}
+			relation.setStatistics(collector.build(relation.getBlockCount()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return relation;
+	}
+
+	/**
+	 * Cuts the file into chunks that start at the beginning of a line.
+	 */
+	private long[] getChunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = size / ((long) parallelism * CHUNKS_PER_WORKER);
+		chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, chunkSize));
+
+		List<Long> bounds = new ArrayList<>();
+		bounds.add(0L);
+		long start = 0;
+		while (start < size) {
+			long end = start + chunkSize < size ? nextLineStart(channel, start + chunkSize) : size;
+			bounds.add(end);
+			start = end;
+		}
+		return bounds.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private static long nextLineStart(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		long size = channel.size();
+		while (position < size) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				break;
+			for (int i = 0; i < read; ++i) {
+				if (buffer.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	private void parseChunk(FileChannel channel, long start, long end, Relation segment,
+			RelationStatistics.Collector collector, int scaleFactor) {
+		MappedByteBuffer buffer;
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot map chunk at " + start, e);
+		}
+
+		try (PinningOutputTarget target = new PinningOutputTarget(segment, blockManager)) {
+			byte[] line = new byte[256];
+			int length = 0;
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (b == '\n') {
+					addLine(target, collector, line, length, scaleFactor);
+					length = 0;
+				} else {
+					if (length == line.length)
+						line = Arrays.copyOf(line, 2 * length);
+					line[length++] = b;
+				}
+			}
+			addLine(target, collector, line, length, scaleFactor);
+		}
+	}
+
+	private static void addLine(PinningOutputTarget target, RelationStatistics.Collector collector, byte[] line,
+			int length, int scaleFactor) {
+		if (length > 0 && line[length - 1] == '\r')
+			length--;
+		if (length == 0)
+			return;
+
+		int fields = 1;
+		for (int i = 0; i < length; ++i) {
+			if (line[i] == '\t')
+				fields++;
+		}
+
+		// each field is decoded once, straight into the array the tuple keeps
+		String[] data = new String[fields];
+		int field = 0;
+		int fieldStart = 0;
+		for (int i = 0; i <= length; ++i) {
+			if (i == length || line[i] == '\t') {
+				int from = fieldStart;
+				int to = i;
+				while (from < to && line[from] == ' ')
+					from++;
+				while (to > from && line[to - 1] == ' ')
+					to--;
+				data[field++] = new String(line, from, to - from, StandardCharsets.UTF_8);
+				fieldStart = i + 1;
+			}
+		}
+
+		Tuple tuple = Tuple.wrap(data);
+		for (int i = 0; i < scaleFactor; ++i) {
+			target.addTuple(tuple);
+			collector.add(tuple);
+		}
+	}
+
+	private static void runWorkers(int workers, Runnable worker) {
+		ForkJoinPool pool = new ForkJoinPool(workers);
+		try {
+			List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+			for (int i = 0; i < workers; ++i) {
+				tasks.add(pool.submit(worker));
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
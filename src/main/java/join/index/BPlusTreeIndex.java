@@ -0,0 +1,175 @@
+package join.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * A B+-tree index that is bulk-loaded bottom-up from the sorted entries. The
+ * leaves hold the entries ordered by key and are filled completely, the inner
+ * nodes hold the first key of each of their children. Since the tree is
+ * static, the leaves of a level are chained by their position in the level.
+ *
+ * A lookup reads one node per level and continues with the following leaves,
+ * as long as they hold the key.
+ */
+public class BPlusTreeIndex implements Index {
+
+	private final Relation relation;
+	private final int attribute;
+	private final BlockManager blockManager;
+
+	private final Relation blocks = new Relation();
+	// the nodes of every level, from the leaves to the root
+	private final List<List<Block>> levels = new ArrayList<>();
+	private final long keyCount;
+	private final long entryCount;
+
+	/**
+	 * Builds a B+-tree index on an attribute of a relation. The relation is read
+	 * once and every node is written once.
+	 *
+	 * @param relation     The relation to index.
+	 * @param attribute    The attribute to index.
+	 * @param blockManager The block manager to use.
+	 */
+	public BPlusTreeIndex(Relation relation, int attribute, BlockManager blockManager) {
+		this.relation = relation;
+		this.attribute = attribute;
+		this.blockManager = blockManager;
+
+		List<IndexEntry> entries = IndexEntry.collect(relation, attribute, blockManager);
+		Collections.sort(entries);
+		long keys = 0;
+		List<Tuple> level = new ArrayList<>(entries.size());
+		for (int i = 0; i < entries.size(); ++i) {
+			if (i == 0 || !entries.get(i).getKey().equals(entries.get(i - 1).getKey()))
+				keys++;
+			level.add(entries.get(i).toTuple());
+		}
+		this.keyCount = keys;
+		this.entryCount = entries.size();
+
+		// write the levels until a level fits into a single node
+		do {
+			List<Tuple> separators = new ArrayList<>();
+			levels.add(write(level, separators));
+			level = separators;
+		} while (level.size() > 1);
+	}
+
+	/**
+	 * Writes the tuples of a level to nodes, with one block pinned at a time, and
+	 * collects a separator for every node: its first key and its position.
+	 */
+	private List<Block> write(List<Tuple> level, List<Tuple> separators) {
+		List<Block> nodes = new ArrayList<>();
+		Block node = null;
+		for (Tuple tuple : level) {
+			if (node == null || !node.addTuple(tuple)) {
+				if (node != null)
+					blockManager.unpin(node);
+				node = blocks.getFreeBlock(blockManager);
+				blockManager.pin(node);
+				if (!node.addTuple(tuple))
+					throw new IllegalStateException("block size too small");
+				separators.add(new Tuple(new String[] { tuple.getData(0), Integer.toString(nodes.size()) }));
+				nodes.add(node);
+			}
+		}
+		if (node != null)
+			blockManager.unpin(node);
+		return nodes;
+	}
+
+	@Override
+	public int[] lookup(JoinKey key) {
+		List<Block> leaves = levels.get(0);
+		if (leaves.isEmpty())
+			return new int[0];
+
+		// descend to the first leaf that may hold the key: the child of the last
+		// separator that is smaller than the key, since equal keys may also end the
+		// preceding child
+		int node = 0;
+		for (int l = levels.size() - 1; l > 0; --l) {
+			Block block = levels.get(l).get(node);
+			blockManager.pin(block);
+			int child = -1;
+			for (Tuple separator : block) {
+				if (child >= 0 && IndexEntry.getKey(separator).compareTo(key) >= 0)
+					break;
+				child = IndexEntry.getBlock(separator);
+			}
+			blockManager.unpin(block);
+			node = child;
+		}
+
+		List<Integer> positions = new ArrayList<>();
+		boolean done = false;
+		for (int n = node; n < leaves.size() && !done; ++n) {
+			Block leaf = leaves.get(n);
+			blockManager.pin(leaf);
+			for (Tuple entry : leaf) {
+				int c = IndexEntry.getKey(entry).compareTo(key);
+				if (c > 0) {
+					done = true;
+					break;
+				}
+				if (c == 0)
+					positions.add(IndexEntry.getBlock(entry));
+			}
+			blockManager.unpin(leaf);
+		}
+		return positions.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Returns the number of levels of the tree, including the leaves.
+	 *
+	 * @return the height of the tree
+	 */
+	public int getHeight() {
+		return levels.size();
+	}
+
+	@Override
+	public Relation getRelation() {
+		return relation;
+	}
+
+	@Override
+	public int getAttribute() {
+		return attribute;
+	}
+
+	@Override
+	public int getBlockCount() {
+		return blocks.getBlockCount();
+	}
+
+	@Override
+	public long getKeyCount() {
+		return keyCount;
+	}
+
+	@Override
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	@Override
+	public double getLookupIOEstimate() {
+		// one node per level, and the further leaves the entries of a key span
+		int leaves = levels.get(0).size();
+		double entriesPerLeaf = leaves == 0 ? 1 : (double) entryCount / leaves;
+		double entriesPerKey = keyCount == 0 ? 0 : (double) entryCount / keyCount;
+		return levels.size() + Math.max(0, entriesPerKey - 1) / Math.max(1, entriesPerLeaf);
+	}
+}
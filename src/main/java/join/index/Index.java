@@ -0,0 +1,67 @@
+package join.index;
+
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+
+/**
+ * A secondary index on an attribute of a relation. The index maps every value
+ * of the attribute to the positions of the relation's blocks that hold tuples
+ * with this value. Its entries are stored in blocks of their own, which are
+ * pinned through the block manager when the index is looked up, so that
+ * lookups are charged IO.
+ *
+ * The relation must not change after the index was built.
+ */
+public interface Index {
+
+	/**
+	 * Returns the indexed relation.
+	 *
+	 * @return the indexed relation
+	 */
+	Relation getRelation();
+
+	/**
+	 * Returns the indexed attribute.
+	 *
+	 * @return the index of the attribute
+	 */
+	int getAttribute();
+
+	/**
+	 * Returns the positions of the blocks that hold tuples with the key.
+	 *
+	 * @param key The key to look up.
+	 * @return the block positions in ascending order, without duplicates
+	 */
+	int[] lookup(JoinKey key);
+
+	/**
+	 * Returns the number of blocks the entries of the index are stored in.
+	 *
+	 * @return the number of index blocks
+	 */
+	int getBlockCount();
+
+	/**
+	 * Returns the number of distinct values of the indexed attribute.
+	 *
+	 * @return the number of distinct keys
+	 */
+	long getKeyCount();
+
+	/**
+	 * Returns the number of entries, i.e. of distinct pairs of a key and a block
+	 * that holds it.
+	 *
+	 * @return the number of entries
+	 */
+	long getEntryCount();
+
+	/**
+	 * Returns the expected number of index blocks read by a lookup.
+	 *
+	 * @return the IO estimate of a lookup
+	 */
+	double getLookupIOEstimate();
+}
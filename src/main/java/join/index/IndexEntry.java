@@ -0,0 +1,88 @@
+package join.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * An entry of an index, the value of the indexed attribute and the position of a
+ * block that holds it. In index blocks, entries are stored as tuples with the
+ * value and the position as attributes.
+ */
+final class IndexEntry implements Comparable<IndexEntry> {
+
+	private final String value;
+	private final JoinKey key;
+	private final int block;
+
+	private IndexEntry(String value, int block) {
+		this.value = value;
+		this.key = JoinKey.of(value);
+		this.block = block;
+	}
+
+	JoinKey getKey() {
+		return key;
+	}
+
+	int getBlock() {
+		return block;
+	}
+
+	Tuple toTuple() {
+		return new Tuple(new String[] { value, Integer.toString(block) });
+	}
+
+	/**
+	 * Returns the key of a tuple written by {@link #toTuple()}.
+	 */
+	static JoinKey getKey(Tuple tuple) {
+		return tuple.getKey(0);
+	}
+
+	/**
+	 * Returns the block position, or child position, of a tuple written by
+	 * {@link #toTuple()}.
+	 */
+	static int getBlock(Tuple tuple) {
+		return Integer.parseInt(tuple.getData(1));
+	}
+
+	@Override
+	public int compareTo(IndexEntry o) {
+		int c = key.compareTo(o.key);
+		return c != 0 ? c : Integer.compare(block, o.block);
+	}
+
+	/**
+	 * Reads a relation block by block and creates an entry for every distinct
+	 * value of the attribute in every block.
+	 *
+	 * @param relation     The relation to index.
+	 * @param attribute    The attribute to index.
+	 * @param blockManager The block manager to use.
+	 * @return the entries, ordered by block
+	 */
+	static List<IndexEntry> collect(Relation relation, int attribute, BlockManager blockManager) {
+		List<IndexEntry> entries = new ArrayList<>();
+		Set<JoinKey> seen = new HashSet<>();
+		for (int b = 0; b < relation.getBlockCount(); ++b) {
+			Block block = relation.getBlock(b);
+			blockManager.pin(block);
+			for (Tuple tuple : block) {
+				if (seen.add(tuple.getKey(attribute)))
+					entries.add(new IndexEntry(tuple.getData(attribute), b));
+			}
+			blockManager.unpin(block);
+			seen.clear();
+		}
+		return entries;
+	}
+}
@@ -0,0 +1,146 @@
+package join.index;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import join.datastructures.Block;
+import join.datastructures.JoinKey;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * A static hash index. The number of buckets is fixed when the index is built,
+ * so that the buckets are filled to about {@link #FILL_FACTOR}, and every
+ * bucket is a chain of index blocks. A lookup reads the chain of one bucket,
+ * which is a single block, unless the bucket overflowed.
+ */
+public class StaticHashIndex implements Index {
+
+	/** The targeted fill factor of the bucket blocks. */
+	public static final double FILL_FACTOR = 0.75;
+
+	// independent of the hash functions of the hash joins
+	private static final int SEED = 0x1D3;
+
+	private final Relation relation;
+	private final int attribute;
+	private final BlockManager blockManager;
+
+	private final Relation blocks = new Relation();
+	private final List<List<Block>> buckets;
+	private final long keyCount;
+	private final long entryCount;
+
+	/**
+	 * Builds a hash index on an attribute of a relation. The relation is read once
+	 * and every index block is written once.
+	 *
+	 * @param relation     The relation to index.
+	 * @param attribute    The attribute to index.
+	 * @param blockManager The block manager to use.
+	 */
+	public StaticHashIndex(Relation relation, int attribute, BlockManager blockManager) {
+		this.relation = relation;
+		this.attribute = attribute;
+		this.blockManager = blockManager;
+
+		List<IndexEntry> entries = IndexEntry.collect(relation, attribute, blockManager);
+		long bytes = 0;
+		Set<JoinKey> keys = new HashSet<>();
+		for (IndexEntry entry : entries) {
+			bytes += entry.toTuple().getSizeInBytes();
+			keys.add(entry.getKey());
+		}
+		this.keyCount = keys.size();
+		this.entryCount = entries.size();
+
+		int bucketCount = (int) Math.max(1, Math.ceil(bytes / (blockManager.getMaxBlockSize() * FILL_FACTOR)));
+		List<List<Tuple>> partitions = new ArrayList<>(bucketCount);
+		for (int i = 0; i < bucketCount; ++i) {
+			partitions.add(new ArrayList<>());
+		}
+		for (IndexEntry entry : entries) {
+			partitions.get(getBucket(entry.getKey(), bucketCount)).add(entry.toTuple());
+		}
+
+		buckets = new ArrayList<>(bucketCount);
+		for (List<Tuple> partition : partitions) {
+			buckets.add(write(partition));
+		}
+	}
+
+	/**
+	 * Writes the entries of a bucket to a chain of blocks, with one block pinned
+	 * at a time.
+	 */
+	private List<Block> write(List<Tuple> partition) {
+		List<Block> chain = new ArrayList<>(1);
+		Block block = blocks.getFreeBlock(blockManager);
+		blockManager.pin(block);
+		chain.add(block);
+		for (Tuple entry : partition) {
+			if (!block.addTuple(entry)) {
+				blockManager.unpin(block);
+				block = blocks.getFreeBlock(blockManager);
+				blockManager.pin(block);
+				chain.add(block);
+				if (!block.addTuple(entry))
+					throw new IllegalStateException("block size too small");
+			}
+		}
+		blockManager.unpin(block);
+		return chain;
+	}
+
+	private static int getBucket(JoinKey key, int bucketCount) {
+		return Math.floorMod(key.hashCode(SEED), bucketCount);
+	}
+
+	@Override
+	public int[] lookup(JoinKey key) {
+		List<Integer> positions = new ArrayList<>();
+		for (Block block : buckets.get(getBucket(key, buckets.size()))) {
+			blockManager.pin(block);
+			for (Tuple entry : block) {
+				if (IndexEntry.getKey(entry).equals(key))
+					positions.add(IndexEntry.getBlock(entry));
+			}
+			blockManager.unpin(block);
+		}
+		// the entries were added block by block, so they are ordered and distinct
+		return positions.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	@Override
+	public Relation getRelation() {
+		return relation;
+	}
+
+	@Override
+	public int getAttribute() {
+		return attribute;
+	}
+
+	@Override
+	public int getBlockCount() {
+		return blocks.getBlockCount();
+	}
+
+	@Override
+	public long getKeyCount() {
+		return keyCount;
+	}
+
+	@Override
+	public long getEntryCount() {
+		return entryCount;
+	}
+
+	@Override
+	public double getLookupIOEstimate() {
+		return (double) blocks.getBlockCount() / buckets.size();
+	}
+}
@@ -0,0 +1,58 @@
+package join.manager;
+
+import join.datastructures.Block;
+
+/**
+ * Is notified by a {@link BlockManager} about pins, unpins and evictions and
+ * about the phases and observations the join algorithms report. Listeners are
+ * called by the thread that caused the event, possibly by several threads at
+ * once, and the block events of the buffer pool while its lock is held, so
+ * they should be cheap.
+ */
+public interface BlockListener {
+
+	/**
+	 * Called after a block was pinned.
+	 *
+	 * @param block the pinned block
+	 * @param read  whether the block had to be read
+	 */
+	default void pinned(Block block, boolean read) {
+	}
+
+	/**
+	 * Called after a pin of a block was removed.
+	 *
+	 * @param block   the unpinned block
+	 * @param written whether the block had to be written
+	 */
+	default void unpinned(Block block, boolean written) {
+	}
+
+	/**
+	 * Called after the buffer pool evicted an unpinned block to free its frame.
+	 *
+	 * @param written whether the block had to be written
+	 */
+	default void evicted(boolean written) {
+	}
+
+	/**
+	 * Called when a join algorithm starts a new phase, see
+	 * {@link BlockManager#markPhase(String)}.
+	 *
+	 * @param phase the name of the phase
+	 */
+	default void phaseStarted(String phase) {
+	}
+
+	/**
+	 * Called when a join algorithm reports a value, see
+	 * {@link BlockManager#observe(String, long)}.
+	 *
+	 * @param metric the name of the value, e.g. <tt>bucketBlocks</tt>
+	 * @param value  the value
+	 */
+	default void observed(String metric, long value) {
+	}
+}
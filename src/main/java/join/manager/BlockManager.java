@@ -1,28 +1,86 @@
 package join.manager;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import join.datastructures.Block;
+import join.datastructures.BlockContent;
+import join.datastructures.BlockLayout;
 
 /**
  * Manages blocks, keeps track of pinned blocks and IO costs.
+ * 
+ * The block manager is thread-safe: every block keeps its own pin count and
+ * state in a single atomic value, the number of pinned blocks is reserved
+ * atomically, so the maximum number of pinned blocks is never exceeded, and the
+ * IO count is a striped counter. The tuples of a block may still only be
+ * written by one thread at a time.
+ * 
+ * If the block manager is created with a block file, the content of unpinned
+ * blocks is written to that file and released from the heap, and read back when
+ * the block is pinned again. Every counted IO operation is then a real read or
+ * write.
+ * 
+ * If the block manager is created with a {@link ReplacementPolicy}, it acts as a
+ * buffer pool: unpinned blocks stay resident as long as their frame is not
+ * needed, pinning a resident block is a hit that costs no IO, and dirty blocks
+ * are only written when they are evicted.
+ * 
+ * Reads and writes are counted separately, and {@link BlockListener}s can be
+ * added to observe every pin and unpin, e.g. to attribute the IO to the phases
+ * the join algorithms mark with {@link #markPhase(String)}.
+ * 
+ * Blocks in a block file can be read and written in the background with
+ * {@link #pinAsync(Block)} and {@link #unpinAsync(Block)}, on a fixed number of
+ * IO threads. Scans use this to read a number of blocks ahead, see
+ * {@link #setReadAhead(int)}.
  */
-public final class BlockManager {
+public final class BlockManager implements AutoCloseable {
 
 	private static enum BlockState {
 		FRESH, LOADED, UNLOADED, DIRTY;
 	}
 
+	private static final int IO_THREADS = 4;
+
 	private final int maxBlockNumber;
 	private final int maxBlockSize;
-	private long ioCount;
+	private final BlockLayout layout;
+	private final LongAdder ioCount;
+	private final LongAdder readCount;
+	private final LongAdder writeCount;
 
-	private final Multiset<Block> pins;
+	private final AtomicInteger pinnedBlocks;
+	private final AtomicInteger peakPinnedBlocks;
 	private final Map<Block, BlockGate> gates;
+	private final BlockStore store;
+
+	// buffer pool state, guarded by the policy
+	private final ReplacementPolicy policy;
+	private int cachedBlocks;
+	private final LongAdder hitCount;
+	private final LongAdder missCount;
+
+	private final List<BlockListener> listeners;
+	private volatile String phase;
+
+	private volatile int readAhead;
+	// created on the first read or write in the background
+	private ExecutorService executor;
 
 	/**
 	 * Creates a new <tt>BlockManager</tt>, which can keep a maximum of
@@ -33,11 +91,79 @@ public final class BlockManager {
 	 * @param maxBlockSize   maximum size of a block
 	 */
 	public BlockManager(int maxBlockNumber, int maxBlockSize) {
+		this(maxBlockNumber, maxBlockSize, (BlockStore) null, null, BlockLayout.ROWS);
+	}
+
+	/**
+	 * Creates a new <tt>BlockManager</tt> like
+	 * {@link #BlockManager(int, int)}, that stores unpinned blocks in the given
+	 * file.
+	 * 
+	 * @param maxBlockNumber maximum number of loaded blocks
+	 * @param maxBlockSize   maximum size of a block
+	 * @param blockFile      the file to store the blocks in, it is deleted when
+	 *                       the block manager is closed
+	 * @throws IOException if the block file cannot be opened
+	 */
+	public BlockManager(int maxBlockNumber, int maxBlockSize, Path blockFile) throws IOException {
+		this(maxBlockNumber, maxBlockSize, blockFile, null);
+	}
+
+	/**
+	 * Creates a new <tt>BlockManager</tt> like
+	 * {@link #BlockManager(int, int)}, that optionally stores unpinned blocks in a
+	 * file and keeps unpinned blocks resident in up to <tt>maxBlockNumber</tt>
+	 * frames.
+	 * 
+	 * @param maxBlockNumber maximum number of loaded blocks
+	 * @param maxBlockSize   maximum size of a block
+	 * @param blockFile      the file to store the blocks in, or <tt>null</tt>
+	 * @param policy         the policy to evict unpinned blocks with, or
+	 *                       <tt>null</tt> to unload blocks as soon as they are
+	 *                       unpinned
+	 * @throws IOException if the block file cannot be opened
+	 */
+	public BlockManager(int maxBlockNumber, int maxBlockSize, Path blockFile, ReplacementPolicy policy)
+			throws IOException {
+		this(maxBlockNumber, maxBlockSize, blockFile, policy, BlockLayout.ROWS);
+	}
+
+	/**
+	 * Creates a new <tt>BlockManager</tt> like
+	 * {@link #BlockManager(int, int, Path, ReplacementPolicy)}, whose blocks store
+	 * their tuples in the given layout.
+	 * 
+	 * @param maxBlockNumber maximum number of loaded blocks
+	 * @param maxBlockSize   maximum size of a block
+	 * @param blockFile      the file to store the blocks in, or <tt>null</tt>
+	 * @param policy         the policy to evict unpinned blocks with, or
+	 *                       <tt>null</tt> to unload blocks as soon as they are
+	 *                       unpinned
+	 * @param layout         the layout of new blocks
+	 * @throws IOException if the block file cannot be opened
+	 */
+	public BlockManager(int maxBlockNumber, int maxBlockSize, Path blockFile, ReplacementPolicy policy,
+			BlockLayout layout) throws IOException {
+		this(maxBlockNumber, maxBlockSize, blockFile == null ? null : new BlockStore(blockFile, maxBlockSize),
+				policy, layout);
+	}
+
+	private BlockManager(int maxBlockNumber, int maxBlockSize, BlockStore store, ReplacementPolicy policy,
+			BlockLayout layout) {
 		this.maxBlockNumber = maxBlockNumber;
 		this.maxBlockSize = maxBlockSize;
-		this.pins = HashMultiset.create();
-		this.gates = new WeakHashMap<>();
-		this.ioCount = 0;
+		this.layout = layout;
+		this.pinnedBlocks = new AtomicInteger();
+		this.peakPinnedBlocks = new AtomicInteger();
+		this.gates = new MapMaker().weakKeys().makeMap();
+		this.ioCount = new LongAdder();
+		this.readCount = new LongAdder();
+		this.writeCount = new LongAdder();
+		this.store = store;
+		this.policy = policy;
+		this.hitCount = new LongAdder();
+		this.missCount = new LongAdder();
+		this.listeners = new CopyOnWriteArrayList<>();
 	}
 
 	/**
@@ -48,13 +174,89 @@ public final class BlockManager {
 	 *                               maximum allowed number of pinned blocks
 	 */
 	public void pin(Block block) {
-		if (!pins.contains(block) && gates.get(block).pin()) {
-			ioCount++;
+		BlockGate gate = gates.get(block);
+		boolean read = reserve(gate);
+		if (read)
+			load(gate);
+		else
+			// the block must not be accessed by another thread before it is read
+			await(gate.loading, true);
+		for (BlockListener listener : listeners) {
+			listener.pinned(block, read);
+		}
+	}
+
+	/**
+	 * Pins a block like {@link #pin(Block)}, but reads it from the block file in
+	 * the background. The frame of the block is reserved right away, so a block
+	 * that is still being read counts against the maximum number of pinned blocks,
+	 * and it has to be unpinned, even if it is never accessed.
+	 * 
+	 * @param block the block to pin
+	 * @return a future that completes with the block, once it can be accessed
+	 * @throws IllegalStateException when the number of pinned blocks exceeds the
+	 *                               maximum allowed number of pinned blocks
+	 */
+	public CompletableFuture<Block> pinAsync(Block block) {
+		BlockGate gate = gates.get(block);
+		boolean read = reserve(gate);
+		CompletableFuture<Void> loading = gate.loading;
+		if (read && loading != null)
+			getExecutor().execute(() -> load(gate));
+		for (BlockListener listener : listeners) {
+			listener.pinned(block, read);
 		}
+		return loading == null ? CompletableFuture.completedFuture(block) : loading.thenApply(v -> block);
+	}
+
+	/**
+	 * Adds a pin to a block, and reserves a frame for it, if it was not pinned.
+	 * 
+	 * @return whether the block has to be read
+	 */
+	private boolean reserve(BlockGate gate) {
+		if (policy != null) {
+			synchronized (policy) {
+				return reserveLocked(gate);
+			}
+		} else if (store != null) {
+			synchronized (gate) {
+				return reserveLocked(gate);
+			}
+		}
+		return reserveLocked(gate);
+	}
+
+	private boolean reserveLocked(BlockGate gate) {
+		if (gate.pin(this)) {
+			ioCount.increment();
+			readCount.increment();
+			missCount.increment();
+			// other pins of the block wait until it is read
+			if (store != null)
+				gate.loading = new CompletableFuture<>();
+			return true;
+		}
+		return false;
+	}
 
-		pins.add(block);
-		if (pins.elementSet().size() > maxBlockNumber) {
-			throw new IllegalStateException("cannot pin block, because maximum number of blocks is already pinned.");
+	/**
+	 * Reads a block reserved by {@link #reserve(BlockGate)} from the block file,
+	 * once it is no longer written in the background.
+	 */
+	private void load(BlockGate gate) {
+		CompletableFuture<Void> loading = gate.loading;
+		if (loading == null)
+			return;
+		try {
+			await(gate.writing, true);
+			gate.load(store);
+			gate.loading = null;
+			loading.complete(null);
+		} catch (RuntimeException e) {
+			gate.loading = null;
+			loading.completeExceptionally(e);
+			throw e;
 		}
 	}
 
@@ -65,11 +267,171 @@ public final class BlockManager {
 	 * @throws IllegalStateException when the block was not pinned before
 	 */
 	public void unpin(Block block) {
-		if (!pins.remove(block)) {
-			throw new IllegalStateException("cannot unpin block that was not pinned before.");
+		unpin(block, false);
+	}
+
+	/**
+	 * Unpins a block like {@link #unpin(Block)}, but writes it to the block file
+	 * in the background. The frame of the block is released right away, a pin of
+	 * the block waits until it is written. Blocks are only written in the
+	 * background, if there is no buffer pool.
+	 * 
+	 * @param block the block to unpin
+	 * @return a future that completes, once the block is written
+	 * @throws IllegalStateException when the block was not pinned before
+	 */
+	public CompletableFuture<Void> unpinAsync(Block block) {
+		CompletableFuture<Void> writing = unpin(block, policy == null);
+		if (writing == null)
+			return CompletableFuture.completedFuture(null);
+		BlockGate gate = gates.get(block);
+		getExecutor().execute(() -> {
+			try {
+				gate.unload(store, true);
+				gate.writing = null;
+				writing.complete(null);
+			} catch (RuntimeException e) {
+				gate.writing = null;
+				writing.completeExceptionally(e);
+			}
+		});
+		return writing.thenApply(v -> null);
+	}
+
+	/**
+	 * Unpins a block.
+	 * 
+	 * @return the future of the write in the background, or <tt>null</tt>, if the
+	 *         block was written already or does not have to be written
+	 */
+	private CompletableFuture<Void> unpin(Block block, boolean writeBehind) {
+		BlockGate gate = gates.get(block);
+		// the block must not be unloaded before it is read
+		await(gate.loading, false);
+		boolean write;
+		if (policy != null) {
+			synchronized (policy) {
+				write = unpin(gate, writeBehind);
+			}
+		} else if (store != null) {
+			synchronized (gate) {
+				write = unpin(gate, writeBehind);
+			}
+		} else {
+			write = unpin(gate, writeBehind);
 		}
-		if (!pins.contains(block) && gates.get(block).unpin()) {
-			ioCount++;
+		for (BlockListener listener : listeners) {
+			listener.unpinned(block, write);
+		}
+		return writeBehind ? gate.writing : null;
+	}
+
+	private boolean unpin(BlockGate gate, boolean writeBehind) {
+		boolean write = gate.unpin(this);
+		if (write) {
+			ioCount.increment();
+			writeCount.increment();
+		}
+		if (store != null && gate.isUnloaded()) {
+			if (write && writeBehind)
+				gate.writing = new CompletableFuture<>();
+			else
+				gate.unload(store, write);
+		}
+		return write;
+	}
+
+	/**
+	 * Waits for a read or write in the background.
+	 * 
+	 * @param rethrow whether to throw the exception the read or write failed with
+	 */
+	private static void await(CompletableFuture<Void> future, boolean rethrow) {
+		if (future == null)
+			return;
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			if (!rethrow)
+				return;
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw e;
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 1, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<>(),
+					new ThreadFactoryBuilder().setNameFormat("block-io-%d").setDaemon(true).build());
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+		}
+		return executor;
+	}
+
+	/**
+	 * Reserves a frame for a block that is about to be pinned. If the block is not
+	 * resident and all frames are in use, an unpinned block is evicted.
+	 * 
+	 * @param gate     the gate of the block
+	 * @param resident whether the block is still resident
+	 * @throws IllegalStateException when the maximum number of blocks is already
+	 *                               pinned
+	 */
+	private void reserveFrame(BlockGate gate, boolean resident) {
+		int pinned;
+		do {
+			pinned = pinnedBlocks.get();
+			if (pinned >= maxBlockNumber) {
+				throw new IllegalStateException(
+						"cannot pin block, because maximum number of blocks is already pinned.");
+			}
+		} while (!pinnedBlocks.compareAndSet(pinned, pinned + 1));
+		peakPinnedBlocks.accumulateAndGet(pinned + 1, Math::max);
+
+		if (policy == null)
+			return;
+		if (resident) {
+			hitCount.increment();
+			cachedBlocks--;
+		}
+		// a block is only evicted for a block that is not resident, and before that
+		// block takes its frame
+		while (cachedBlocks > 0 && pinnedBlocks.get() + cachedBlocks > maxBlockNumber) {
+			evict(policy.evict());
+		}
+		policy.pinned(gate);
+	}
+
+	/**
+	 * Releases the frame of a block that lost its last pin.
+	 * 
+	 * @param gate   the gate of the block
+	 * @param cached whether the block stays resident
+	 */
+	private void releaseFrame(BlockGate gate, boolean cached) {
+		pinnedBlocks.decrementAndGet();
+		if (cached) {
+			cachedBlocks++;
+			policy.unpinned(gate);
+		} else if (policy != null) {
+			policy.released(gate);
+		}
+	}
+
+	private void evict(BlockGate victim) {
+		cachedBlocks--;
+		boolean write = victim.evict();
+		if (write) {
+			ioCount.increment();
+			writeCount.increment();
+		}
+		if (store != null)
+			victim.unload(store, write);
+		for (BlockListener listener : listeners) {
+			listener.evicted(write);
 		}
 	}
 
@@ -81,7 +443,7 @@ public final class BlockManager {
 	 */
 	public Block getFreeBlock(boolean inMemory) {
 		BlockGate gate = new BlockGate(true, inMemory);
-		Block b = new Block(maxBlockSize, gate);
+		Block b = new Block(maxBlockSize, gate, layout);
 		gates.put(b, gate);
 		return b;
 	}
@@ -94,7 +456,39 @@ public final class BlockManager {
 	 *         limit is reached
 	 */
 	public int getFreeBlockCount() {
-		return maxBlockNumber - pins.elementSet().size();
+		return maxBlockNumber - pinnedBlocks.get();
+	}
+
+	/**
+	 * Sets the number of blocks scans pin ahead of the block they are at, to read
+	 * them in the background. Blocks read ahead count against the maximum number
+	 * of pinned blocks, so scans only read ahead while enough blocks are free.
+	 * 
+	 * @param readAhead the number of blocks to read ahead, 0 to read every block
+	 *                  when it is needed
+	 */
+	public void setReadAhead(int readAhead) {
+		if (readAhead < 0)
+			throw new IllegalArgumentException("read-ahead must not be negative");
+		this.readAhead = readAhead;
+	}
+
+	/**
+	 * Returns the number of blocks scans pin ahead, see {@link #setReadAhead(int)}.
+	 * 
+	 * @return the number of blocks to read ahead
+	 */
+	public int getReadAhead() {
+		return readAhead;
+	}
+
+	/**
+	 * Returns the maximum size of a block
+	 * 
+	 * @return the maximum size of a block
+	 */
+	public int getMaxBlockSize() {
+		return maxBlockSize;
 	}
 
 	/**
@@ -103,45 +497,292 @@ public final class BlockManager {
 	 * @return the number of IO operations since the creation of the block manager
 	 */
 	public long getIOCount() {
-		return ioCount;
+		return ioCount.sum();
+	}
+
+	/**
+	 * Returns the number of blocks read since the creation of the block manager
+	 * 
+	 * @return the number of blocks read
+	 */
+	public long getReadCount() {
+		return readCount.sum();
+	}
+
+	/**
+	 * Returns the number of blocks written since the creation of the block
+	 * manager, when they were unpinned or evicted
+	 * 
+	 * @return the number of blocks written
+	 */
+	public long getWriteCount() {
+		return writeCount.sum();
+	}
+
+	/**
+	 * Returns the highest number of blocks that were pinned at the same time since
+	 * the creation of the block manager or the last
+	 * {@link #resetPeakPinnedCount()}.
+	 * 
+	 * @return the peak number of pinned blocks
+	 */
+	public int getPeakPinnedCount() {
+		return peakPinnedBlocks.get();
+	}
+
+	/**
+	 * Restarts tracking the peak number of pinned blocks at the number of blocks
+	 * that are pinned now.
+	 */
+	public void resetPeakPinnedCount() {
+		peakPinnedBlocks.set(pinnedBlocks.get());
+	}
+
+	/**
+	 * Adds a listener that is notified about pins, unpins, phases and
+	 * observations.
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addListener(BlockListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener added with {@link #addListener(BlockListener)}.
+	 * 
+	 * @param listener the listener to remove
+	 */
+	public void removeListener(BlockListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Marks the start of a phase of a join algorithm, e.g. partitioning or
+	 * probing, and notifies the listeners. The IO until the next phase is started
+	 * belongs to this phase.
+	 * 
+	 * @param phase the name of the phase
+	 * @return the name of the previous phase, or <tt>null</tt>, to restore it
+	 *         after a nested phase
+	 */
+	public String markPhase(String phase) {
+		String previous = this.phase;
+		this.phase = phase;
+		for (BlockListener listener : listeners) {
+			listener.phaseStarted(phase);
+		}
+		return previous;
+	}
+
+	/**
+	 * Reports a value observed by a join algorithm, e.g. the size of a bucket, to
+	 * the listeners.
+	 * 
+	 * @param metric the name of the value
+	 * @param value  the value
+	 */
+	public void observe(String metric, long value) {
+		for (BlockListener listener : listeners) {
+			listener.observed(metric, value);
+		}
+	}
+
+	/**
+	 * Returns the time spent reading and writing the block file.
+	 * 
+	 * @return the time spent in file IO in nanoseconds, 0 if blocks are not
+	 *         stored in a file
+	 */
+	public long getIONanos() {
+		return store == null ? 0 : store.getIONanos();
+	}
+
+	/**
+	 * Finishes the reads and writes in the background, then closes and deletes
+	 * the block file, if there is one.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdown();
+				try {
+					executor.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		if (store != null)
+			store.close();
+	}
+
+	/**
+	 * Returns the number of pins of unpinned blocks that were still resident.
+	 * 
+	 * @return the number of buffer pool hits
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * Returns the number of pins of unpinned blocks that had to be read.
+	 * 
+	 * @return the number of buffer pool misses
+	 */
+	public long getMissCount() {
+		return missCount.sum();
 	}
 
 	public void outputStats() {
-		System.out.println("Number of pins: " + pins.elementSet().size());
+		System.out.println("Number of pins: " + pinnedBlocks.get());
 		System.out.println("Free block count: " + getFreeBlockCount());
+		System.out.println("Buffer hits: " + getHitCount() + ", misses: " + getMissCount());
+		System.out.println("Blocks read: " + getReadCount() + ", written: " + getWriteCount()
+				+ ", peak pinned: " + getPeakPinnedCount());
 	}
 
+	/**
+	 * The state of a block. Pin count and block state are kept together in one
+	 * atomic value, so every state transition is a single compare-and-set.
+	 */
 	public final static class BlockGate {
 
-		private BlockState state;
-		private boolean inMemory;
+		private static final BlockState[] STATES = BlockState.values();
+		private static final int STATE_BITS = 2;
+		private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+		private final AtomicInteger value;
+		private final boolean inMemory;
+
+		private BlockContent content;
+		private long slot = -1;
+
+		// the background read and write of the block, if they are not finished
+		private volatile CompletableFuture<Void> loading;
+		private volatile CompletableFuture<Void> writing;
 
 		private BlockGate(boolean fresh, boolean inMemory) {
-			this.state = fresh ? BlockState.FRESH : BlockState.UNLOADED;
+			this.value = new AtomicInteger(encode(0, fresh ? BlockState.FRESH : BlockState.UNLOADED));
 			this.inMemory = inMemory;
 		}
 
-		private boolean pin() {
-			if (inMemory && state != BlockState.FRESH)
-				throw new IllegalStateException("cannot pin inmemory block again");
+		/**
+		 * Adds a pin and loads the block, if it was not pinned before.
+		 * 
+		 * @return whether the block had to be read
+		 */
+		private boolean pin(BlockManager blockManager) {
+			while (true) {
+				int current = value.get();
+				int pins = pinCount(current);
+				if (pins > 0) {
+					if (value.compareAndSet(current, encode(pins + 1, state(current))))
+						return false;
+					continue;
+				}
+
+				BlockState state = state(current);
+				if (inMemory && state != BlockState.FRESH)
+					throw new IllegalStateException("cannot pin inmemory block again");
+
+				// an unpinned block is only loaded or dirty, if the buffer pool kept it
+				boolean resident = state == BlockState.LOADED || state == BlockState.DIRTY;
+				blockManager.reserveFrame(this, resident);
+				if (value.compareAndSet(current, encode(1, resident ? state : BlockState.LOADED)))
+					return state == BlockState.UNLOADED;
+				// another thread changed the block in the meantime
+				blockManager.releaseFrame(this, resident);
+			}
+		}
+
+		/**
+		 * Removes a pin and unloads the block, if this was the last pin.
+		 * 
+		 * @return whether the block had to be written
+		 */
+		private boolean unpin(BlockManager blockManager) {
+			while (true) {
+				int current = value.get();
+				int pins = pinCount(current);
+				if (pins == 0)
+					throw new IllegalStateException("cannot unpin block that was not pinned before.");
 
-			boolean load = state == BlockState.UNLOADED;
-			this.state = BlockState.LOADED;
-			return load;
+				// the buffer pool keeps disk blocks resident, in-memory blocks are lost
+				boolean cache = blockManager.policy != null && !inMemory;
+				BlockState state = state(current);
+				BlockState next = pins == 1 && !cache ? BlockState.UNLOADED : state;
+				if (value.compareAndSet(current, encode(pins - 1, next))) {
+					if (pins > 1)
+						return false;
+					blockManager.releaseFrame(this, cache);
+					return !cache && !inMemory && state == BlockState.DIRTY;
+				}
+			}
 		}
 
-		private boolean unpin() {
-			boolean write = state == BlockState.DIRTY;
-			this.state = BlockState.UNLOADED;
-			return !inMemory && write;
+		/**
+		 * Unloads a resident, unpinned block.
+		 * 
+		 * @return whether the block had to be written
+		 */
+		private boolean evict() {
+			BlockState state = state(value.getAndSet(encode(0, BlockState.UNLOADED)));
+			return !inMemory && state == BlockState.DIRTY;
+		}
+
+		private boolean isUnloaded() {
+			return state(value.get()) == BlockState.UNLOADED;
+		}
+
+		/**
+		 * Binds the content of a block to this gate. The block manager releases
+		 * and restores it when the block is stored in a file.
+		 * 
+		 * @param content the tuples of the block
+		 */
+		public void bind(BlockContent content) {
+			if (this.content != null)
+				throw new IllegalStateException("block gate is already bound to a block");
+			this.content = content;
+		}
+
+		private void load(BlockStore store) {
+			if (slot >= 0)
+				store.read(slot, content);
+		}
+
+		private void unload(BlockStore store, boolean write) {
+			if (write) {
+				if (slot < 0)
+					slot = store.allocateSlot();
+				store.write(slot, content);
+			}
+			content.clear();
 		}
 
 		public boolean canAccess() {
-			return state == BlockState.LOADED || state == BlockState.DIRTY;
+			int current = value.get();
+			BlockState state = state(current);
+			return pinCount(current) > 0 && (state == BlockState.LOADED || state == BlockState.DIRTY);
 		}
 
 		public void markDirty() {
-			state = BlockState.DIRTY;
+			value.updateAndGet(current -> encode(pinCount(current), BlockState.DIRTY));
+		}
+
+		private static int encode(int pins, BlockState state) {
+			return pins << STATE_BITS | state.ordinal();
+		}
+
+		private static int pinCount(int value) {
+			return value >>> STATE_BITS;
+		}
+
+		private static BlockState state(int value) {
+			return STATES[value & STATE_MASK];
 		}
 
 	}
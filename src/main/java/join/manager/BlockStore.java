@@ -0,0 +1,100 @@
+package join.manager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import join.datastructures.BlockContent;
+
+/**
+ * A file that stores the content of unpinned blocks, one fixed-size slot per
+ * block.
+ *
+ * A slot holds the content of a block in the format of its layout, which takes
+ * at most twice the size of the block plus a small header, see
+ * {@link BlockContent#writeTo(ByteBuffer)}.
+ */
+public final class BlockStore implements AutoCloseable {
+
+	private final FileChannel channel;
+	private final int slotSize;
+	private final AtomicLong slotCount;
+	private final LongAdder ioNanos;
+
+	/**
+	 * Creates a new block store. An existing file is truncated and the file is
+	 * deleted, when the store is closed.
+	 *
+	 * @param file         the file to store the blocks in
+	 * @param maxBlockSize the maximum size of a block
+	 * @throws IOException if the file cannot be opened
+	 */
+	public BlockStore(Path file, int maxBlockSize) throws IOException {
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		this.slotSize = BlockContent.HEADER_SIZE + 2 * maxBlockSize;
+		this.slotCount = new AtomicLong();
+		this.ioNanos = new LongAdder();
+	}
+
+	long allocateSlot() {
+		return slotCount.getAndIncrement();
+	}
+
+	void write(long slot, BlockContent content) {
+		ByteBuffer buffer = ByteBuffer.allocate(slotSize);
+		content.writeTo(buffer);
+		buffer.flip();
+
+		long start = System.nanoTime();
+		try {
+			long position = slot * slotSize;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot write block to " + slot, e);
+		} finally {
+			ioNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	void read(long slot, BlockContent content) {
+		ByteBuffer buffer = ByteBuffer.allocate(slotSize);
+		long start = System.nanoTime();
+		try {
+			long position = slot * slotSize;
+			while (buffer.hasRemaining()) {
+				int read = channel.read(buffer, position);
+				if (read < 0)
+					break;
+				position += read;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("cannot read block from " + slot, e);
+		} finally {
+			ioNanos.add(System.nanoTime() - start);
+		}
+		buffer.flip();
+		content.readFrom(buffer);
+	}
+
+	/**
+	 * Returns the time spent reading and writing blocks.
+	 *
+	 * @return the time spent in file IO in nanoseconds
+	 */
+	public long getIONanos() {
+		return ioNanos.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,104 @@
+package join.manager;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import join.manager.BlockManager.BlockGate;
+
+/**
+ * Clock replacement: every resident block keeps its frame in a ring of frames,
+ * which has at most as many frames as the buffer pool. Every pin of a block sets
+ * the reference bit of its frame, without moving the block. The hand sweeps the
+ * ring from where it stopped the last time, skips pinned blocks, clears set
+ * reference bits and evicts the first unpinned block whose bit is already
+ * cleared.
+ */
+final class ClockReplacementPolicy implements ReplacementPolicy {
+
+	// the blocks in their frames, null for a frame that is free
+	private final List<BlockGate> frames;
+	private final Map<BlockGate, Integer> positions;
+	private final BitSet referenced;
+	// the frames of the blocks that can be evicted
+	private final BitSet unpinned;
+	private final BitSet free;
+	private int hand;
+
+	ClockReplacementPolicy() {
+		this.frames = new ArrayList<>();
+		this.positions = new HashMap<>();
+		this.referenced = new BitSet();
+		this.unpinned = new BitSet();
+		this.free = new BitSet();
+	}
+
+	@Override
+	public void unpinned(BlockGate gate) {
+		unpinned.set(getFrame(gate));
+	}
+
+	@Override
+	public void pinned(BlockGate gate) {
+		int frame = getFrame(gate);
+		unpinned.clear(frame);
+		referenced.set(frame);
+	}
+
+	@Override
+	public void released(BlockGate gate) {
+		Integer frame = positions.get(gate);
+		if (frame != null)
+			release(frame);
+	}
+
+	@Override
+	public BlockGate evict() {
+		if (unpinned.isEmpty())
+			return null;
+		// the sweep ends within two rounds, once the bits of the first round are cleared
+		while (true) {
+			int frame = hand;
+			hand = (hand + 1) % frames.size();
+			if (!unpinned.get(frame))
+				continue;
+			if (referenced.get(frame)) {
+				referenced.clear(frame);
+				continue;
+			}
+			BlockGate victim = frames.get(frame);
+			release(frame);
+			return victim;
+		}
+	}
+
+	/**
+	 * Returns the frame of a block, and puts the block into a free frame, if it
+	 * does not have one.
+	 */
+	private int getFrame(BlockGate gate) {
+		Integer frame = positions.get(gate);
+		if (frame != null)
+			return frame;
+		int position = free.nextSetBit(0);
+		if (position < 0) {
+			position = frames.size();
+			frames.add(gate);
+		} else {
+			free.clear(position);
+			frames.set(position, gate);
+		}
+		positions.put(gate, position);
+		return position;
+	}
+
+	private void release(int frame) {
+		positions.remove(frames.get(frame));
+		frames.set(frame, null);
+		referenced.clear(frame);
+		unpinned.clear(frame);
+		free.set(frame);
+	}
+}
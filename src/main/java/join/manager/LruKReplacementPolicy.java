@@ -0,0 +1,66 @@
+package join.manager;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import join.manager.BlockManager.BlockGate;
+
+/**
+ * LRU-K replacement: evicts the block whose K-th most recent pin lies furthest
+ * in the past. Blocks with less than K pins are evicted first, in LRU order. The
+ * pin history is kept beyond the eviction of a block.
+ */
+final class LruKReplacementPolicy implements ReplacementPolicy {
+
+	private final int k;
+	private final Map<BlockGate, long[]> history;
+	private final LinkedHashSet<BlockGate> candidates;
+	private long time;
+
+	LruKReplacementPolicy(int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("k must be positive");
+		this.k = k;
+		this.history = new WeakHashMap<>();
+		this.candidates = new LinkedHashSet<>();
+	}
+
+	@Override
+	public void unpinned(BlockGate gate) {
+		// the unpin of a block that was never pinned again counts as its first access
+		history.computeIfAbsent(gate, g -> newHistory());
+		candidates.add(gate);
+	}
+
+	@Override
+	public void pinned(BlockGate gate) {
+		candidates.remove(gate);
+		long[] times = history.computeIfAbsent(gate, g -> newHistory());
+		System.arraycopy(times, 0, times, 1, k - 1);
+		times[0] = ++time;
+	}
+
+	@Override
+	public BlockGate evict() {
+		BlockGate victim = null;
+		long victimTime = Long.MAX_VALUE;
+		for (BlockGate gate : candidates) {
+			// the iteration order breaks ties in LRU order
+			long kthTime = history.get(gate)[k - 1];
+			if (kthTime < victimTime) {
+				victim = gate;
+				victimTime = kthTime;
+			}
+		}
+		if (victim != null)
+			candidates.remove(victim);
+		return victim;
+	}
+
+	private long[] newHistory() {
+		long[] times = new long[k];
+		times[0] = ++time;
+		return times;
+	}
+}
@@ -0,0 +1,47 @@
+package join.manager;
+
+import java.util.LinkedHashSet;
+
+import join.manager.BlockManager.BlockGate;
+
+/**
+ * Evicts either the least or the most recently unpinned block.
+ */
+final class RecencyReplacementPolicy implements ReplacementPolicy {
+
+	private final boolean mostRecent;
+
+	// ordered from least to most recently unpinned
+	private final LinkedHashSet<BlockGate> candidates;
+
+	RecencyReplacementPolicy(boolean mostRecent) {
+		this.mostRecent = mostRecent;
+		this.candidates = new LinkedHashSet<>();
+	}
+
+	@Override
+	public void unpinned(BlockGate gate) {
+		candidates.add(gate);
+	}
+
+	@Override
+	public void pinned(BlockGate gate) {
+		candidates.remove(gate);
+	}
+
+	@Override
+	public BlockGate evict() {
+		if (candidates.isEmpty())
+			return null;
+
+		BlockGate victim = null;
+		if (mostRecent) {
+			for (BlockGate gate : candidates)
+				victim = gate;
+		} else {
+			victim = candidates.iterator().next();
+		}
+		candidates.remove(victim);
+		return victim;
+	}
+}
@@ -0,0 +1,121 @@
+package join.manager;
+
+import java.util.Locale;
+
+import join.manager.BlockManager.BlockGate;
+
+/**
+ * Decides which unpinned block is evicted from the buffer pool, when a frame is
+ * needed for another block. A policy only keeps track of the blocks that are
+ * resident but not pinned, all calls are made while the block manager holds its
+ * buffer pool lock.
+ */
+public interface ReplacementPolicy {
+
+	/**
+	 * Called when the last pin of a resident block is removed, which makes the
+	 * block a candidate for eviction.
+	 * 
+	 * @param gate the gate of the unpinned block
+	 */
+	void unpinned(BlockGate gate);
+
+	/**
+	 * Called when a block without pins is pinned, either because it is loaded or
+	 * because it was still resident. This removes the block from the eviction
+	 * candidates.
+	 * 
+	 * @param gate the gate of the pinned block
+	 */
+	void pinned(BlockGate gate);
+
+	/**
+	 * Called when the last pin of a block is removed, but the block does not stay
+	 * resident, like an in-memory block. By default, nothing is done, because the
+	 * block was never a candidate for eviction.
+	 * 
+	 * @param gate the gate of the released block
+	 */
+	default void released(BlockGate gate) {
+	}
+
+	/**
+	 * Chooses a block to evict and removes it from the eviction candidates.
+	 * 
+	 * @return the gate of the block to evict, or <tt>null</tt> if there are no
+	 *         candidates
+	 */
+	BlockGate evict();
+
+	/**
+	 * Creates a policy that evicts the least recently unpinned block.
+	 * 
+	 * @return a new LRU policy
+	 */
+	static ReplacementPolicy lru() {
+		return new RecencyReplacementPolicy(false);
+	}
+
+	/**
+	 * Creates a policy that evicts the most recently unpinned block, which keeps
+	 * the start of a relation resident while it is scanned repeatedly.
+	 * 
+	 * @return a new MRU policy
+	 */
+	static ReplacementPolicy mru() {
+		return new RecencyReplacementPolicy(true);
+	}
+
+	/**
+	 * Creates a clock (second chance) policy.
+	 * 
+	 * @return a new clock policy
+	 */
+	static ReplacementPolicy clock() {
+		return new ClockReplacementPolicy();
+	}
+
+	/**
+	 * Creates a LRU-K policy, which evicts the block whose K-th most recent pin is
+	 * the oldest.
+	 * 
+	 * @param k the number of pins to remember per block
+	 * @return a new LRU-K policy
+	 */
+	static ReplacementPolicy lruK(int k) {
+		return new LruKReplacementPolicy(k);
+	}
+
+	/**
+	 * Creates a policy by name: <tt>lru</tt>, <tt>mru</tt>, <tt>clock</tt>,
+	 * <tt>lru-k</tt> for LRU-2 or <tt>lru-&lt;K&gt;</tt> for any K, e.g.
+	 * <tt>lru-3</tt>.
+	 * 
+	 * @param name the name of the policy
+	 * @return a new policy
+	 * @throws IllegalArgumentException if there is no policy with this name
+	 */
+	static ReplacementPolicy forName(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		switch (lower) {
+		case "lru":
+			return lru();
+		case "mru":
+			return mru();
+		case "clock":
+			return clock();
+		case "lru-k":
+			// LRU-2, the usual choice, if no K is given
+			return lruK(2);
+		default:
+			if (lower.startsWith("lru-")) {
+				try {
+					return lruK(Integer.parseInt(lower.substring(4)));
+				} catch (NumberFormatException e) {
+					// fall through to the error below
+				}
+			}
+			throw new IllegalArgumentException("unknown replacement policy: " + name);
+		}
+	}
+}
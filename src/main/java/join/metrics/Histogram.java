@@ -0,0 +1,89 @@
+package join.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values with power-of-two buckets: bucket
+ * <tt>i</tt> counts the values from <tt>2^(i-1)</tt> to <tt>2^i - 1</tt>, bucket
+ * 0 counts zeros. Values can be recorded by several threads at once.
+ */
+public final class Histogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		long v = Math.max(0, value);
+		buckets.incrementAndGet(getBucket(v));
+		count.increment();
+		sum.add(v);
+		min.accumulateAndGet(v, Math::min);
+		max.accumulateAndGet(v, Math::max);
+	}
+
+	private static int getBucket(long value) {
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Returns the smallest value recorded.
+	 *
+	 * @return the minimum, or 0, if no value was recorded
+	 */
+	public long getMin() {
+		return getCount() == 0 ? 0 : min.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long n = getCount();
+		return n == 0 ? 0 : (double) getSum() / n;
+	}
+
+	/**
+	 * Returns the number of buckets, the largest bucket index plus one.
+	 *
+	 * @return the number of buckets
+	 */
+	public int getBuckets() {
+		return BUCKETS;
+	}
+
+	/**
+	 * Returns the number of values recorded in a bucket.
+	 *
+	 * @param bucket the bucket index
+	 * @return the number of values
+	 */
+	public long getCount(int bucket) {
+		return buckets.get(bucket);
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket.
+	 *
+	 * @param bucket the bucket index
+	 * @return the upper bound of the bucket, inclusive
+	 */
+	public static long getUpperBound(int bucket) {
+		return bucket == 0 ? 0 : bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+}
@@ -0,0 +1,339 @@
+package join.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import join.algorithms.Join;
+import join.algorithms.JoinSink;
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.Tuple;
+import join.manager.BlockListener;
+import join.manager.BlockManager;
+import join.metrics.OperatorMetrics.PhaseMetrics;
+
+/**
+ * Records the metrics of the joins run through {@link #measure(String, Join)}.
+ * The recorder listens to the block manager and attributes every pin, read and
+ * write to the phase of the running join, so the joins should run one after
+ * another. The recorded metrics can be exported as JSON or CSV.
+ */
+public final class MetricsRecorder implements BlockListener {
+
+	/** The phase of a join, until it marks its first phase. */
+	public static final String DEFAULT_PHASE = "join";
+
+	private final BlockManager blockManager;
+	private final List<OperatorMetrics> operators = Collections.synchronizedList(new ArrayList<>());
+	private volatile OperatorMetrics current;
+	private volatile PhaseMetrics phase;
+	// the start time and pin count of every pinned block
+	private final Map<Block, long[]> pinned = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructs a recorder and adds it as a listener to the block manager.
+	 *
+	 * @param blockManager the block manager the joins use
+	 */
+	public MetricsRecorder(BlockManager blockManager) {
+		this.blockManager = blockManager;
+		blockManager.addListener(this);
+	}
+
+	/**
+	 * Wraps a join, so that the metrics of every run are recorded.
+	 *
+	 * @param name The name of the join in the metrics.
+	 * @param join The join to measure.
+	 * @return the measured join
+	 */
+	public Join measure(String name, Join join) {
+		return new MeasuredJoin(name, join);
+	}
+
+	/**
+	 * Returns the metrics of the joins that ran so far.
+	 *
+	 * @return the metrics, in the order the joins ran
+	 */
+	public List<OperatorMetrics> getOperators() {
+		synchronized (operators) {
+			return new ArrayList<>(operators);
+		}
+	}
+
+	@Override
+	public void pinned(Block block, boolean read) {
+		PhaseMetrics p = phase;
+		if (p == null)
+			return;
+		p.pins.increment();
+		if (read)
+			p.reads.increment();
+		long now = System.nanoTime();
+		pinned.compute(block, (b, pin) -> {
+			if (pin == null)
+				return new long[] { now, 1 };
+			pin[1]++;
+			return pin;
+		});
+	}
+
+	@Override
+	public void unpinned(Block block, boolean written) {
+		PhaseMetrics p = phase;
+		if (p == null)
+			return;
+		if (written)
+			p.writes.increment();
+		// blocks that were pinned before the join started are not tracked
+		OperatorMetrics c = current;
+		long now = System.nanoTime();
+		pinned.computeIfPresent(block, (b, pin) -> {
+			if (--pin[1] > 0)
+				return pin;
+			if (c != null)
+				c.getPinDurations().record(now - pin[0]);
+			return null;
+		});
+	}
+
+	@Override
+	public void evicted(boolean written) {
+		PhaseMetrics p = phase;
+		if (p != null && written)
+			p.writes.increment();
+	}
+
+	@Override
+	public void phaseStarted(String name) {
+		OperatorMetrics c = current;
+		if (c != null)
+			phase = c.getPhase(name);
+	}
+
+	@Override
+	public void observed(String metric, long value) {
+		OperatorMetrics c = current;
+		if (c != null)
+			c.getObservation(metric).record(value);
+	}
+
+	/**
+	 * Writes the metrics as a JSON object with an array of operators.
+	 *
+	 * @param writer the writer to write to
+	 * @throws IOException if the writer fails
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		writer.write("{\"operators\":[");
+		boolean firstOperator = true;
+		for (OperatorMetrics operator : getOperators()) {
+			writer.write(firstOperator ? "\n" : ",\n");
+			firstOperator = false;
+			writer.write("{\"name\":" + quote(operator.getName()) + ",\"tuplesIn\":" + operator.getTuplesIn()
+					+ ",\"tuplesOut\":" + operator.getTuplesOut() + ",\"cpuNanos\":" + operator.getCpuNanos()
+					+ ",\"wallNanos\":" + operator.getWallNanos() + ",\"peakPinnedBlocks\":"
+					+ operator.getPeakPinnedBlocks() + ",\"reads\":" + operator.getReadCount() + ",\"writes\":"
+					+ operator.getWriteCount() + ",\"phases\":[");
+			boolean first = true;
+			for (PhaseMetrics p : operator.getPhases().values()) {
+				writer.write((first ? "" : ",") + "{\"name\":" + quote(p.getName()) + ",\"pins\":" + p.getPinCount()
+						+ ",\"reads\":" + p.getReadCount() + ",\"writes\":" + p.getWriteCount() + "}");
+				first = false;
+			}
+			writer.write("],\"pinDurationNanos\":" + toJson(operator.getPinDurations()) + ",\"observations\":{");
+			first = true;
+			for (Map.Entry<String, Histogram> observation : operator.getObservations().entrySet()) {
+				writer.write((first ? "" : ",") + quote(observation.getKey()) + ":" + toJson(observation.getValue()));
+				first = false;
+			}
+			writer.write("}}");
+		}
+		writer.write("\n]}\n");
+	}
+
+	private static String toJson(Histogram histogram) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"count\":").append(histogram.getCount()).append(",\"min\":").append(histogram.getMin())
+				.append(",\"max\":").append(histogram.getMax()).append(",\"mean\":")
+				.append(String.format(Locale.ROOT, "%.1f", histogram.getMean())).append(",\"buckets\":{");
+		boolean first = true;
+		for (int i = 0; i < histogram.getBuckets(); ++i) {
+			if (histogram.getCount(i) == 0)
+				continue;
+			json.append(first ? "" : ",").append('"').append(Histogram.getUpperBound(i)).append("\":")
+					.append(histogram.getCount(i));
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	private static String quote(String value) {
+		StringBuilder json = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				json.append('\\').append(c);
+			} else if (c < 0x20) {
+				json.append(String.format("\\u%04x", (int) c));
+			} else {
+				json.append(c);
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Writes the metrics as CSV with the columns operator, phase, metric and
+	 * value, one row per value. The phase is empty for metrics of the whole
+	 * operator. Histograms are written as their count, minimum, maximum and mean,
+	 * and the count of every non-empty bucket with the metric
+	 * <tt>&lt;name&gt;.le.&lt;upper bound&gt;</tt>.
+	 *
+	 * @param writer the writer to write to
+	 * @throws IOException if the writer fails
+	 */
+	public void writeCsv(Writer writer) throws IOException {
+		writer.write("operator,phase,metric,value\n");
+		for (OperatorMetrics operator : getOperators()) {
+			String name = csv(operator.getName());
+			writeCsv(writer, name, "", "tuplesIn", operator.getTuplesIn());
+			writeCsv(writer, name, "", "tuplesOut", operator.getTuplesOut());
+			writeCsv(writer, name, "", "cpuNanos", operator.getCpuNanos());
+			writeCsv(writer, name, "", "wallNanos", operator.getWallNanos());
+			writeCsv(writer, name, "", "peakPinnedBlocks", operator.getPeakPinnedBlocks());
+			writeCsv(writer, name, "", "reads", operator.getReadCount());
+			writeCsv(writer, name, "", "writes", operator.getWriteCount());
+			for (PhaseMetrics p : operator.getPhases().values()) {
+				String phaseName = csv(p.getName());
+				writeCsv(writer, name, phaseName, "pins", p.getPinCount());
+				writeCsv(writer, name, phaseName, "reads", p.getReadCount());
+				writeCsv(writer, name, phaseName, "writes", p.getWriteCount());
+			}
+			writeCsv(writer, name, "pinDurationNanos", operator.getPinDurations());
+			for (Map.Entry<String, Histogram> observation : operator.getObservations().entrySet()) {
+				writeCsv(writer, name, csv(observation.getKey()), observation.getValue());
+			}
+		}
+	}
+
+	private static void writeCsv(Writer writer, String operator, String metric, Histogram histogram)
+			throws IOException {
+		writeCsv(writer, operator, "", metric + ".count", histogram.getCount());
+		writeCsv(writer, operator, "", metric + ".min", histogram.getMin());
+		writeCsv(writer, operator, "", metric + ".max", histogram.getMax());
+		writer.write(operator + ",," + metric + ".mean,"
+				+ String.format(Locale.ROOT, "%.1f", histogram.getMean()) + "\n");
+		for (int i = 0; i < histogram.getBuckets(); ++i) {
+			if (histogram.getCount(i) > 0)
+				writeCsv(writer, operator, "", metric + ".le." + Histogram.getUpperBound(i), histogram.getCount(i));
+		}
+	}
+
+	private static void writeCsv(Writer writer, String operator, String phase, String metric, long value)
+			throws IOException {
+		writer.write(operator + "," + phase + "," + metric + "," + value + "\n");
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static long getCpuNanos() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		return -1;
+	}
+
+	/**
+	 * A join that records its metrics.
+	 */
+	private final class MeasuredJoin implements Join {
+		private final String name;
+		private final Join join;
+
+		private MeasuredJoin(String name, Join join) {
+			this.name = name;
+			this.join = join;
+		}
+
+		@Override
+		public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+				Consumer<Tuple> consumer) {
+			run(relation1, relation2, metrics -> join.join(relation1, joinAttribute1, relation2, joinAttribute2,
+					tuple -> {
+						metrics.tuplesOut.increment();
+						consumer.accept(tuple);
+					}));
+		}
+
+		@Override
+		public void join(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2,
+				JoinSink sink) {
+			run(relation1, relation2, metrics -> join.join(relation1, joinAttribute1, relation2, joinAttribute2,
+					(left, right, count) -> {
+						metrics.tuplesOut.add(count);
+						sink.accept(left, right, count);
+					}));
+		}
+
+		/**
+		 * Runs the join and records its metrics.
+		 */
+		private void run(Relation relation1, Relation relation2, Consumer<OperatorMetrics> execution) {
+			OperatorMetrics metrics = new OperatorMetrics(name);
+			metrics.tuplesIn = getTupleCount(relation1, relation2);
+			blockManager.resetPeakPinnedCount();
+			pinned.clear();
+			current = metrics;
+			phase = metrics.getPhase(DEFAULT_PHASE);
+
+			long cpu = getCpuNanos();
+			long start = System.nanoTime();
+			try {
+				execution.accept(metrics);
+			} finally {
+				metrics.wallNanos = System.nanoTime() - start;
+				metrics.cpuNanos = cpu < 0 ? -1 : getCpuNanos() - cpu;
+				metrics.peakPinnedBlocks = blockManager.getPeakPinnedCount();
+				metrics.removeIfEmpty(DEFAULT_PHASE);
+				current = null;
+				phase = null;
+				pinned.clear();
+				operators.add(metrics);
+			}
+		}
+
+		private long getTupleCount(Relation relation1, Relation relation2) {
+			RelationStatistics statistics1 = relation1.getStatistics();
+			RelationStatistics statistics2 = relation2.getStatistics();
+			if (statistics1 == null || statistics2 == null)
+				return -1;
+			return statistics1.getTupleCount() + statistics2.getTupleCount();
+		}
+
+		@Override
+		public int getIOEstimate(Relation relation1, Relation relation2) {
+			return join.getIOEstimate(relation1, relation2);
+		}
+
+		@Override
+		public int getIOEstimate(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+			return join.getIOEstimate(relation1, joinAttribute1, relation2, joinAttribute2);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package join.metrics;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one execution of an operator: its tuples in and out, time,
+ * peak pinned blocks, the IO of each of its phases, the durations of its pins
+ * and the distributions of the values it reported, e.g. bucket sizes.
+ */
+public final class OperatorMetrics {
+
+	private final String name;
+	final LongAdder tuplesOut = new LongAdder();
+	volatile long tuplesIn = -1;
+	volatile long cpuNanos = -1;
+	volatile long wallNanos;
+	volatile int peakPinnedBlocks;
+
+	// in the order the phases were started
+	private final Map<String, PhaseMetrics> phases = new LinkedHashMap<>();
+	private final Map<String, Histogram> observations = new LinkedHashMap<>();
+	private final Histogram pinDurations = new Histogram();
+
+	OperatorMetrics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the number of input tuples.
+	 *
+	 * @return the number of tuples of the inputs, or -1, if it is not known
+	 */
+	public long getTuplesIn() {
+		return tuplesIn;
+	}
+
+	public long getTuplesOut() {
+		return tuplesOut.sum();
+	}
+
+	/**
+	 * Returns the CPU time the process spent while the operator ran, which
+	 * includes worker threads, but also the garbage collector.
+	 *
+	 * @return the CPU time in nanoseconds, or -1, if it cannot be measured
+	 */
+	public long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	public int getPeakPinnedBlocks() {
+		return peakPinnedBlocks;
+	}
+
+	public long getReadCount() {
+		long reads = 0;
+		for (PhaseMetrics phase : getPhases().values()) {
+			reads += phase.getReadCount();
+		}
+		return reads;
+	}
+
+	public long getWriteCount() {
+		long writes = 0;
+		for (PhaseMetrics phase : getPhases().values()) {
+			writes += phase.getWriteCount();
+		}
+		return writes;
+	}
+
+	/**
+	 * Returns the metrics of the phases of the operator.
+	 *
+	 * @return the phases by name, in the order they were first started
+	 */
+	public synchronized Map<String, PhaseMetrics> getPhases() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(phases));
+	}
+
+	/**
+	 * Returns the distributions of the values the operator reported.
+	 *
+	 * @return the histograms by the names of the values
+	 */
+	public synchronized Map<String, Histogram> getObservations() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(observations));
+	}
+
+	/**
+	 * Returns the distribution of the time blocks stayed pinned.
+	 *
+	 * @return the histogram of the pin durations in nanoseconds
+	 */
+	public Histogram getPinDurations() {
+		return pinDurations;
+	}
+
+	synchronized PhaseMetrics getPhase(String phase) {
+		return phases.computeIfAbsent(phase, PhaseMetrics::new);
+	}
+
+	/**
+	 * Removes a phase, if no block was pinned or written in it.
+	 */
+	synchronized void removeIfEmpty(String phase) {
+		PhaseMetrics p = phases.get(phase);
+		if (p != null && p.getPinCount() == 0 && p.getWriteCount() == 0)
+			phases.remove(phase);
+	}
+
+	synchronized Histogram getObservation(String metric) {
+		return observations.computeIfAbsent(metric, m -> new Histogram());
+	}
+
+	/**
+	 * The IO of a phase of an operator.
+	 */
+	public static final class PhaseMetrics {
+		private final String name;
+		final LongAdder pins = new LongAdder();
+		final LongAdder reads = new LongAdder();
+		final LongAdder writes = new LongAdder();
+
+		private PhaseMetrics(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getPinCount() {
+			return pins.sum();
+		}
+
+		public long getReadCount() {
+			return reads.sum();
+		}
+
+		public long getWriteCount() {
+			return writes.sum();
+		}
+	}
+}
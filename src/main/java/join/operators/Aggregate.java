@@ -0,0 +1,190 @@
+package join.operators;
+
+import join.datastructures.Tuple;
+
+/**
+ * An aggregate function of a group: the number of tuples, or the minimum,
+ * maximum or sum of a numeric attribute. Attribute values that are not numbers,
+ * like the missing value <tt>\N</tt> of the IMDb files, are ignored, and the
+ * minimum, maximum and sum of a group without numbers are <tt>\N</tt>.
+ *
+ * Integral sums are exact, as long as they fit into a long. Minimum and maximum
+ * keep the attribute value as it was written, e.g. <tt>7.50</tt>.
+ */
+public final class Aggregate {
+
+	/** The value of an aggregate over no numbers. */
+	public static final String NULL = "\\N";
+
+	public enum Function {
+		COUNT, MIN, MAX, SUM
+	}
+
+	private final Function function;
+	private final int attribute;
+
+	private Aggregate(Function function, int attribute) {
+		this.function = function;
+		this.attribute = attribute;
+	}
+
+	public static Aggregate count() {
+		return new Aggregate(Function.COUNT, -1);
+	}
+
+	public static Aggregate min(int attribute) {
+		return new Aggregate(Function.MIN, attribute);
+	}
+
+	public static Aggregate max(int attribute) {
+		return new Aggregate(Function.MAX, attribute);
+	}
+
+	public static Aggregate sum(int attribute) {
+		return new Aggregate(Function.SUM, attribute);
+	}
+
+	/**
+	 * Parses an aggregate of the form <tt>count</tt>, <tt>min:&lt;attribute&gt;</tt>,
+	 * <tt>max:&lt;attribute&gt;</tt> or <tt>sum:&lt;attribute&gt;</tt>.
+	 *
+	 * @param value the aggregate
+	 * @return the parsed aggregate
+	 * @throws IllegalArgumentException if the value is not an aggregate
+	 */
+	public static Aggregate parse(String value) {
+		String[] parts = value.split(":");
+		Function function;
+		try {
+			function = Function.valueOf(parts[0].toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("unknown aggregate: " + value);
+		}
+		if (function == Function.COUNT && parts.length == 1)
+			return count();
+		if (function == Function.COUNT || parts.length != 2)
+			throw new IllegalArgumentException("invalid aggregate: " + value);
+		return new Aggregate(function, Integer.parseInt(parts[1]));
+	}
+
+	public Function getFunction() {
+		return function;
+	}
+
+	/**
+	 * Returns the aggregated attribute.
+	 *
+	 * @return the attribute index, or -1 for {@link Function#COUNT}
+	 */
+	public int getAttribute() {
+		return attribute;
+	}
+
+	/**
+	 * Returns the partial aggregate of a single tuple, which accumulators combine
+	 * like the partial aggregates of whole groups.
+	 */
+	String getPartial(Tuple tuple) {
+		if (function == Function.COUNT)
+			return "1";
+		String value = tuple.getData(attribute);
+		return parseNumber(value) == null ? NULL : value;
+	}
+
+	Accumulator newAccumulator() {
+		return new Accumulator(function);
+	}
+
+	/**
+	 * Parses a long or a double.
+	 *
+	 * @return the number, or <tt>null</tt>, if the value is not a number
+	 */
+	private static Number parseNumber(String value) {
+		if (value.isEmpty() || value.equals(NULL))
+			return null;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			// fall through to doubles
+		}
+		try {
+			double number = Double.parseDouble(value);
+			return Double.isNaN(number) ? null : number;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return function == Function.COUNT ? "count" : function.name().toLowerCase() + ":" + attribute;
+	}
+
+	/**
+	 * The state of an aggregate of one group, which partial aggregates are added
+	 * to.
+	 */
+	static final class Accumulator {
+		private final Function function;
+		private long count;
+		private boolean present;
+		// the sum, in longSum, while it is integral and fits into a long
+		private boolean integral = true;
+		private long longSum;
+		private double doubleSum;
+		// the minimum or maximum as it was written and its value
+		private String extreme;
+		private double extremeValue;
+
+		private Accumulator(Function function) {
+			this.function = function;
+		}
+
+		void add(String partial) {
+			if (function == Function.COUNT) {
+				count += Long.parseLong(partial);
+				return;
+			}
+			Number number = parseNumber(partial);
+			if (number == null)
+				return;
+			if (function == Function.SUM) {
+				addToSum(number);
+			} else {
+				double value = number.doubleValue();
+				if (!present || (function == Function.MIN ? value < extremeValue : value > extremeValue)) {
+					extreme = partial;
+					extremeValue = value;
+				}
+			}
+			present = true;
+		}
+
+		private void addToSum(Number number) {
+			if (integral && number instanceof Long) {
+				try {
+					longSum = Math.addExact(longSum, number.longValue());
+					return;
+				} catch (ArithmeticException e) {
+					// continue with doubles
+				}
+			}
+			if (integral) {
+				integral = false;
+				doubleSum = longSum;
+			}
+			doubleSum += number.doubleValue();
+		}
+
+		String get() {
+			if (function == Function.COUNT)
+				return Long.toString(count);
+			if (!present)
+				return NULL;
+			if (function == Function.SUM)
+				return integral ? Long.toString(longSum) : Double.toString(doubleSum);
+			return extreme;
+		}
+	}
+}
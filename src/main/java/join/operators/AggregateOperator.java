@@ -0,0 +1,80 @@
+package join.operators;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import join.datastructures.Tuple;
+import join.manager.BlockManager;
+
+/**
+ * Hash aggregation operator. When it is opened, it groups all tuples of its
+ * input with a {@link HashAggregation}, which may pin half of the blocks the
+ * input does not need at least, and spills the groups that do not fit. It then
+ * delivers one tuple per group, with the group attributes followed by the
+ * aggregates, in no particular order.
+ */
+public class AggregateOperator implements Operator {
+
+	private final Operator input;
+	private final int[] groupBy;
+	private final List<Aggregate> aggregates;
+	private final BlockManager blockManager;
+
+	private int reserved;
+	private HashAggregation aggregation;
+
+	/**
+	 * Constructs a new aggregation operator.
+	 *
+	 * @param input        The input to aggregate.
+	 * @param groupBy      The attributes of the input to group by.
+	 * @param aggregates   The aggregates of every group.
+	 * @param blockManager The block manager to use.
+	 */
+	public AggregateOperator(Operator input, int[] groupBy, List<Aggregate> aggregates, BlockManager blockManager) {
+		this.input = input;
+		this.groupBy = groupBy.clone();
+		this.aggregates = new ArrayList<>(aggregates);
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void open() {
+		int available = blockManager.getFreeBlockCount() - reserved - input.getMinimumBlocks();
+		int maxBlocks = Math.max(1, available / 2);
+		input.setReservedBlocks(reserved + maxBlocks);
+		aggregation = new HashAggregation(groupBy, aggregates, maxBlocks, reserved, blockManager);
+		try {
+			input.run(aggregation);
+		} catch (RuntimeException e) {
+			aggregation.close();
+			aggregation = null;
+			throw e;
+		}
+	}
+
+	@Override
+	public Tuple next() {
+		return aggregation.next();
+	}
+
+	@Override
+	public void close() {
+		if (aggregation != null) {
+			aggregation.close();
+			aggregation = null;
+		}
+	}
+
+	@Override
+	public void setReservedBlocks(int blocks) {
+		reserved = blocks;
+	}
+
+	@Override
+	public int getMinimumBlocks() {
+		// one block to spill into while the input is read, and one block to read a
+		// spilled partition, one resident block and one partition while merging
+		return Math.max(input.getMinimumBlocks() + 1, 3);
+	}
+}
@@ -0,0 +1,361 @@
+package join.operators;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.helper.PinningOutputTarget;
+import join.helper.PinningTupleIterator;
+import join.manager.BlockManager;
+
+/**
+ * Groups the tuples passed to it as a consumer, e.g. by a join, with a hash
+ * table, and delivers one tuple per group with the group attributes followed by
+ * the aggregates. Its memory is bounded by the buffer pool: every group takes
+ * the space of its partial aggregate tuple in pinned in-memory blocks. Once no
+ * further block can be pinned, the tuples of new groups are spilled as partial
+ * aggregates, while the groups in the hash table are still updated. A group is
+ * thus either completely in the hash table or completely spilled.
+ *
+ * When the input is finished, the groups of the hash table are delivered, and
+ * the spilled tuples are aggregated again with all blocks the consumer does not
+ * need. Their new groups are hash-partitioned on the group attributes into as
+ * many spill partitions as the free blocks allow, and every partition is
+ * aggregated recursively, with another hash function on every level.
+ *
+ * While it consumes tuples, the aggregation pins at most the given number of
+ * blocks, because the producer may still need the others. The groups fill all of
+ * them, and once a new group does not fit, the partial aggregates of the groups
+ * in the last resident block are spilled, and the block is spilled into instead.
+ * With a single block, which a join leaves for its consumer, the groups are thus
+ * only spilled, if they do not fit into that block.
+ */
+public class HashAggregation implements Consumer<Tuple>, AutoCloseable {
+
+	/** The largest number of partitions a level is spilled into. */
+	public static final int MAX_FANOUT = 32;
+
+	private final int[] groupBy;
+	private final List<Aggregate> aggregates;
+	private final int maxBlocks;
+	private final int reserved;
+	private final BlockManager blockManager;
+
+	private Map<Tuple, Aggregate.Accumulator[]> groups = new HashMap<>();
+	private Relation resident = new Relation(true);
+	private Block block;
+	// the number of resident blocks that are pinned
+	private int pinned;
+	// whether the tuples of new groups are spilled
+	private boolean full;
+	private PinningOutputTarget[] targets = new PinningOutputTarget[1];
+	private Relation[] partitions = new Relation[1];
+	// the level of the partitions that are spilled into
+	private int depth;
+
+	private boolean finished;
+	private Iterator<Map.Entry<Tuple, Aggregate.Accumulator[]>> results;
+	private final Deque<Relation> pending = new ArrayDeque<>();
+	private final Deque<Integer> pendingDepths = new ArrayDeque<>();
+
+	/**
+	 * Constructs an aggregation that pins a single block, while it consumes
+	 * tuples, like a {@link PinningOutputTarget}.
+	 *
+	 * @param groupBy      The attributes to group by.
+	 * @param aggregates   The aggregates of every group.
+	 * @param blockManager The block manager to use.
+	 */
+	public HashAggregation(int[] groupBy, List<Aggregate> aggregates, BlockManager blockManager) {
+		this(groupBy, aggregates, 1, 0, blockManager);
+	}
+
+	/**
+	 * Constructs an aggregation.
+	 *
+	 * @param groupBy        The attributes to group by.
+	 * @param aggregates     The aggregates of every group.
+	 * @param maxBlocks      The number of blocks to pin at most, while tuples are
+	 *                       consumed.
+	 * @param reservedBlocks The number of blocks the consumer of the groups needs
+	 *                       to pin, which are left free.
+	 * @param blockManager   The block manager to use.
+	 */
+	public HashAggregation(int[] groupBy, List<Aggregate> aggregates, int maxBlocks, int reservedBlocks,
+			BlockManager blockManager) {
+		if (maxBlocks < 1) {
+			throw new IllegalArgumentException("an aggregation needs at least one block");
+		}
+		this.groupBy = groupBy.clone();
+		this.aggregates = new ArrayList<>(aggregates);
+		this.maxBlocks = maxBlocks;
+		this.reserved = reservedBlocks;
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void accept(Tuple tuple) {
+		if (finished) {
+			throw new IllegalStateException("aggregation already finished");
+		}
+		String[] key = new String[groupBy.length];
+		for (int i = 0; i < groupBy.length; ++i) {
+			key[i] = tuple.getData(groupBy[i]);
+		}
+		String[] partials = new String[aggregates.size()];
+		for (int i = 0; i < partials.length; ++i) {
+			partials[i] = aggregates.get(i).getPartial(tuple);
+		}
+		add(Tuple.wrap(key), partials);
+	}
+
+	/**
+	 * Adds the partial aggregates of a group to the hash table, or spills them, if
+	 * the group is not in the hash table and does not fit anymore.
+	 */
+	private void add(Tuple key, String[] partials) {
+		Aggregate.Accumulator[] accumulators = groups.get(key);
+		if (accumulators == null) {
+			if (full || !reserve(key, partials)) {
+				// the group was or will be spilled, so it must never enter the hash table
+				if (!full && !finished)
+					spillBlock();
+				full = true;
+				spill(key, partials);
+				return;
+			}
+			accumulators = new Aggregate.Accumulator[aggregates.size()];
+			for (int i = 0; i < accumulators.length; ++i) {
+				accumulators[i] = aggregates.get(i).newAccumulator();
+			}
+			groups.put(key, accumulators);
+		}
+		for (int i = 0; i < partials.length; ++i) {
+			accumulators[i].add(partials[i]);
+		}
+	}
+
+	/**
+	 * Takes the space of a new group in the resident blocks.
+	 *
+	 * @return whether the group fits
+	 */
+	private boolean reserve(Tuple key, String[] partials) {
+		Tuple group = Tuple.concat(key, Tuple.wrap(partials));
+		if (block != null && block.addTuple(group))
+			return true;
+		if (!canPin())
+			return false;
+		block = resident.getFreeBlock(blockManager);
+		blockManager.pin(block);
+		pinned++;
+		if (!block.addTuple(group)) {
+			throw new IllegalStateException("block size too small");
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether another resident block can be pinned. While tuples are
+	 * consumed, all blocks may be pinned, because a resident block is spilled to
+	 * make room for the spill partition, otherwise one block stays free for every
+	 * spill partition that is not opened yet.
+	 */
+	private boolean canPin() {
+		if (!finished)
+			return pinned < maxBlocks && blockManager.getFreeBlockCount() > reserved;
+		int unopened = 0;
+		for (PinningOutputTarget target : targets) {
+			if (target == null)
+				unopened++;
+		}
+		return blockManager.getFreeBlockCount() > reserved + unopened;
+	}
+
+	/**
+	 * Spills the partial aggregates of the groups in the last resident block, and
+	 * releases the block, so that the spill partition can be opened in its place.
+	 */
+	private void spillBlock() {
+		if (block == null)
+			return;
+		List<Tuple> spilled = new ArrayList<>();
+		for (Tuple group : block) {
+			spilled.add(group);
+		}
+		// the resident blocks are released in the order they were pinned, so the
+		// last one can be released on its own
+		blockManager.unpin(block);
+		pinned--;
+		block = null;
+		for (Tuple group : spilled) {
+			String[] key = new String[groupBy.length];
+			for (int i = 0; i < key.length; ++i) {
+				key[i] = group.getData(i);
+			}
+			Tuple groupKey = Tuple.wrap(key);
+			Aggregate.Accumulator[] accumulators = groups.remove(groupKey);
+			String[] partials = new String[accumulators.length];
+			for (int i = 0; i < partials.length; ++i) {
+				partials[i] = accumulators[i].get();
+			}
+			spill(groupKey, partials);
+		}
+	}
+
+	private void spill(Tuple key, String[] partials) {
+		int partition = 0;
+		if (targets.length > 1) {
+			int hash = 0;
+			for (int i = 0; i < key.getAttributeCount(); ++i) {
+				hash = 31 * hash + key.getKey(i).hashCode(depth);
+			}
+			partition = Math.floorMod(hash, targets.length);
+		}
+		if (targets[partition] == null) {
+			partitions[partition] = new Relation();
+			targets[partition] = new PinningOutputTarget(partitions[partition], blockManager);
+		}
+		targets[partition].addTuple(Tuple.concat(key, Tuple.wrap(partials)));
+	}
+
+	/**
+	 * Returns the next group. The first call finishes the input.
+	 *
+	 * @return the group attributes followed by the aggregates, or <tt>null</tt>,
+	 *         if all groups were delivered
+	 */
+	public Tuple next() {
+		if (!finished) {
+			finished = true;
+			blockManager.observe("groups", groups.size());
+			closeTargets(1);
+			results = groups.entrySet().iterator();
+		}
+		while (!results.hasNext()) {
+			releaseResident();
+			if (pending.isEmpty())
+				return null;
+			aggregate(pending.pop(), pendingDepths.pop());
+			results = groups.entrySet().iterator();
+		}
+		Map.Entry<Tuple, Aggregate.Accumulator[]> group = results.next();
+		String[] values = new String[groupBy.length + aggregates.size()];
+		for (int i = 0; i < groupBy.length; ++i) {
+			values[i] = group.getKey().getData(i);
+		}
+		for (int i = 0; i < aggregates.size(); ++i) {
+			values[groupBy.length + i] = group.getValue()[i].get();
+		}
+		return Tuple.wrap(values);
+	}
+
+	/**
+	 * Passes all groups to the consumer and releases all blocks.
+	 *
+	 * @param consumer the consumer of the groups
+	 */
+	public void run(Consumer<Tuple> consumer) {
+		try {
+			Tuple group;
+			while ((group = next()) != null) {
+				consumer.accept(group);
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Aggregates the partial aggregates of a spill partition into the hash table,
+	 * and spills the groups that do not fit into partitions of the next level.
+	 */
+	private void aggregate(Relation partition, int level) {
+		blockManager.markPhase("merge");
+		// one block to read the partition, one resident block and the spill partitions
+		int available = blockManager.getFreeBlockCount() - reserved - 2;
+		if (available < 1) {
+			throw new IllegalStateException("not enough free blocks to merge the spilled groups");
+		}
+		int fanout = Math.max(1, Math.min(MAX_FANOUT, available / 2));
+		targets = new PinningOutputTarget[fanout];
+		partitions = new Relation[fanout];
+		depth = level;
+		full = false;
+
+		try (PinningTupleIterator tuples = new PinningTupleIterator(partition.iterator(), blockManager)) {
+			while (tuples.hasNext()) {
+				Tuple tuple = tuples.next();
+				String[] key = new String[groupBy.length];
+				for (int i = 0; i < key.length; ++i) {
+					key[i] = tuple.getData(i);
+				}
+				String[] partials = new String[aggregates.size()];
+				for (int i = 0; i < partials.length; ++i) {
+					partials[i] = tuple.getData(key.length + i);
+				}
+				add(Tuple.wrap(key), partials);
+			}
+		} finally {
+			closeTargets(level + 1);
+		}
+		blockManager.observe("groups", groups.size());
+	}
+
+	/**
+	 * Closes the spill partitions and queues the non-empty ones to be aggregated
+	 * on the given level.
+	 */
+	private void closeTargets(int level) {
+		int spilled = 0;
+		for (int i = 0; i < targets.length; ++i) {
+			if (targets[i] == null)
+				continue;
+			targets[i].close();
+			targets[i] = null;
+			pending.push(partitions[i]);
+			pendingDepths.push(level);
+			partitions[i] = null;
+			spilled++;
+		}
+		if (spilled > 0)
+			blockManager.observe("spilledPartitions", spilled);
+	}
+
+	private void releaseResident() {
+		for (Block b : resident) {
+			if (pinned == 0)
+				break;
+			blockManager.unpin(b);
+			pinned--;
+		}
+		resident = new Relation(true);
+		block = null;
+		groups = new HashMap<>();
+	}
+
+	/**
+	 * Releases all blocks. The groups that were not delivered yet are dropped.
+	 */
+	@Override
+	public void close() {
+		for (PinningOutputTarget target : targets) {
+			if (target != null)
+				target.close();
+		}
+		targets = new PinningOutputTarget[1];
+		pending.clear();
+		pendingDepths.clear();
+		releaseResident();
+		finished = true;
+		results = groups.entrySet().iterator();
+	}
+}
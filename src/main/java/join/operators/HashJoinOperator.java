@@ -0,0 +1,377 @@
+package join.operators;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import join.algorithms.HashEquiJoin;
+import join.algorithms.Join;
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
+import join.helper.PinningOutputTarget;
+import join.manager.BlockManager;
+
+/**
+ * Hash equi-join operator. When it is opened, it reads one of its inputs into
+ * pinned in-memory blocks and a hash table, then it streams the other input past
+ * the hash table. The hash table is built on the build input, or on the probe
+ * input, if the sizes of both are known, like those of scans, and the probe
+ * input is smaller. The output tuples hold the attributes of the probe tuple
+ * followed by the attributes of the build tuple.
+ *
+ * If the input does not fit into the free blocks, while keeping the blocks
+ * needed by the other input free, the resident tuples, the rest of the input and
+ * then the other input are hash-partitioned into spill partitions. The
+ * partitions are joined pair by pair while the tuples are delivered: the smaller
+ * partition of a pair is loaded into the hash table, and the larger one is
+ * streamed past it. A pair whose smaller partition does not fit either is joined
+ * with a {@link HashEquiJoin} into a materialized result.
+ */
+public class HashJoinOperator implements Operator {
+
+	/** The largest number of partitions the inputs are spilled into. */
+	public static final int MAX_FANOUT = 32;
+
+	/**
+	 * The seed of the hash function of the spill partitions, independent of the
+	 * hash table and of the partitioning passes of a hash join on a partition.
+	 */
+	private static final int PARTITION_SEED = 16;
+
+	private final Operator probe;
+	private final int probeAttribute;
+	private final Operator build;
+	private final int buildAttribute;
+	private final BlockManager blockManager;
+
+	private Relation resident;
+	// the number of resident blocks that are pinned
+	private int pinned;
+	private int reserved;
+	private TupleHashTable hashTable;
+	private final Deque<Tuple> matches = new ArrayDeque<>();
+
+	// the spill partitions, if the input of the hash table did not fit, and the
+	// next pair
+	private Relation[] buildPartitions;
+	private Relation[] probePartitions;
+	private int partition;
+	// the input streamed past the hash table, and whether it is the build input,
+	// because the hash table holds the probe tuples
+	private Operator streamed;
+	private boolean swapped;
+	private ScanOperator materialized;
+
+	/**
+	 * Constructs a new hash join operator.
+	 *
+	 * @param probe          The input that is streamed.
+	 * @param probeAttribute The join attribute of the probe input.
+	 * @param build          The input the hash table is built on.
+	 * @param buildAttribute The join attribute of the build input.
+	 * @param blockManager   The block manager to use.
+	 */
+	public HashJoinOperator(Operator probe, int probeAttribute, Operator build, int buildAttribute,
+			BlockManager blockManager) {
+		this.probe = probe;
+		this.probeAttribute = probeAttribute;
+		this.build = build;
+		this.buildAttribute = buildAttribute;
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void open() {
+		int freeBlocks = blockManager.getFreeBlockCount() - reserved;
+		// the hash table is built on the smaller input, if the sizes of both are known
+		int buildBlocks = build.getBlockCount();
+		int probeBlocks = probe.getBlockCount();
+		boolean probeTable = buildBlocks >= 0 && probeBlocks >= 0 && probeBlocks < buildBlocks;
+		Operator table = probeTable ? probe : build;
+		int tableAttribute = probeTable ? probeAttribute : buildAttribute;
+		Operator other = probeTable ? build : probe;
+		int otherAttribute = probeTable ? buildAttribute : probeAttribute;
+
+		resident = new Relation(true);
+		// a resident block is pinned while the one input is read, and the other input
+		// is read while the resident blocks are pinned
+		table.setReservedBlocks(reserved + other.getMinimumBlocks() + 1);
+		table.open();
+		Relation[] tablePartitions = null;
+		PinningOutputTarget[] targets = null;
+		try {
+			// the input may pin further blocks while it is read
+			Tuple tuple = readResident(table, tableAttribute,
+					reserved + other.getMinimumBlocks() + table.getMinimumBlocks());
+			if (tuple != null) {
+				// the input does not fit: the resident tuples are spilled, too
+				tablePartitions = new Relation[getPartitionCount(table.getBlockCount(), freeBlocks, other)];
+				spillResident(tableAttribute, tablePartitions);
+				targets = new PinningOutputTarget[tablePartitions.length];
+				for (; tuple != null; tuple = table.next()) {
+					spill(tuple, tableAttribute, tablePartitions, targets);
+				}
+			}
+		} finally {
+			table.close();
+			if (targets != null)
+				closeTargets(targets);
+		}
+		if (tablePartitions == null) {
+			stream(other, probeTable);
+			return;
+		}
+
+		Relation[] otherPartitions = new Relation[tablePartitions.length];
+		targets = new PinningOutputTarget[otherPartitions.length];
+		other.setReservedBlocks(reserved + targets.length);
+		other.open();
+		try {
+			Tuple tuple;
+			while ((tuple = other.next()) != null) {
+				spill(tuple, otherAttribute, otherPartitions, targets);
+			}
+		} finally {
+			other.close();
+			closeTargets(targets);
+		}
+		buildPartitions = probeTable ? otherPartitions : tablePartitions;
+		probePartitions = probeTable ? tablePartitions : otherPartitions;
+		partition = 0;
+	}
+
+	/**
+	 * Returns the number of spill partitions of an input that did not fit. They
+	 * take the place of the resident blocks and of the free blocks, except for the
+	 * blocks the input reads ahead, and the other input still needs its blocks
+	 * while it is partitioned. If the size of the input is known, it is spilled
+	 * into as few partitions as fit into memory, which leaves the most blocks to
+	 * the other input.
+	 *
+	 * @param blocks     the number of blocks of the input, or -1, if it is not
+	 *                   known
+	 * @param freeBlocks the number of blocks the operator may pin
+	 * @param other      the other input
+	 */
+	private int getPartitionCount(int blocks, int freeBlocks, Operator other) {
+		int count = Math.min(pinned + blockManager.getFreeBlockCount() - reserved - blockManager.getReadAhead(),
+				freeBlocks - other.getMinimumBlocks());
+		if (blocks >= 0)
+			count = Math.min(count, HashEquiJoin.getBucketCount(blocks, freeBlocks));
+		return Math.max(1, Math.min(MAX_FANOUT, count));
+	}
+
+	/**
+	 * Reads an input into resident blocks and the hash table, as long as more than
+	 * the given number of blocks stay free.
+	 *
+	 * @return the first tuple that did not fit, while the input is still open, or
+	 *         <tt>null</tt>, if the whole input was read
+	 */
+	private Tuple readResident(Operator input, int attribute, int keepFree) {
+		hashTable = new TupleHashTable(attribute, 0);
+		Block block = null;
+		Tuple tuple;
+		while ((tuple = input.next()) != null) {
+			// the hash table refers to the copy in the block
+			tuple = tuple.materialize();
+			if (block == null || !block.addTuple(tuple)) {
+				if (blockManager.getFreeBlockCount() <= keepFree)
+					return tuple;
+				block = resident.getFreeBlock(blockManager);
+				blockManager.pin(block);
+				pinned++;
+				if (!block.addTuple(tuple)) {
+					throw new IllegalStateException("block size too small");
+				}
+			}
+			hashTable.add(tuple);
+		}
+		return null;
+	}
+
+	/**
+	 * Opens the input that is streamed past the hash table.
+	 *
+	 * @param input   the input to stream
+	 * @param swapped whether the hash table holds the tuples of the probe input
+	 */
+	private void stream(Operator input, boolean swapped) {
+		input.setReservedBlocks(reserved);
+		input.open();
+		streamed = input;
+		this.swapped = swapped;
+	}
+
+	/**
+	 * Moves the resident tuples to the spill partitions and unpins the resident
+	 * blocks. The partitions are written one after another, because only the
+	 * blocks the input needs are free, until the resident blocks are unpinned.
+	 */
+	private void spillResident(int attribute, Relation[] partitions) {
+		for (int i = 0; i < partitions.length; ++i) {
+			PinningOutputTarget target = null;
+			for (Block block : resident) {
+				for (Tuple tuple : block) {
+					if (getPartition(tuple, attribute, partitions.length) != i)
+						continue;
+					if (target == null) {
+						partitions[i] = new Relation();
+						target = new PinningOutputTarget(partitions[i], blockManager);
+					}
+					target.addTuple(tuple);
+				}
+			}
+			if (target != null)
+				target.close();
+		}
+		releaseResident();
+	}
+
+	private void spill(Tuple tuple, int attribute, Relation[] partitions, PinningOutputTarget[] targets) {
+		int i = getPartition(tuple, attribute, partitions.length);
+		if (targets[i] == null) {
+			if (partitions[i] == null)
+				partitions[i] = new Relation();
+			targets[i] = new PinningOutputTarget(partitions[i], blockManager);
+		}
+		targets[i].addTuple(tuple);
+	}
+
+	private static int getPartition(Tuple tuple, int attribute, int partitions) {
+		return Math.floorMod(tuple.getKey(attribute).hashCode(PARTITION_SEED), partitions);
+	}
+
+	private static void closeTargets(PinningOutputTarget[] targets) {
+		for (PinningOutputTarget target : targets) {
+			if (target != null)
+				target.close();
+		}
+	}
+
+	@Override
+	public Tuple next() {
+		while (matches.isEmpty()) {
+			Tuple tuple;
+			if (materialized != null) {
+				tuple = materialized.next();
+				if (tuple != null)
+					return tuple;
+				materialized.close();
+				materialized = null;
+			} else if (streamed != null && (tuple = streamed.next()) != null) {
+				addMatches(tuple);
+			} else if (buildPartitions == null || !openPartitions()) {
+				return null;
+			}
+		}
+		return matches.poll();
+	}
+
+	private void addMatches(Tuple tuple) {
+		if (swapped) {
+			hashTable.forEachMatch(tuple.getKey(buildAttribute),
+					match -> matches.add(Join.joinTuple(match, probeAttribute, tuple, buildAttribute)));
+		} else {
+			hashTable.forEachMatch(tuple.getKey(probeAttribute),
+					match -> matches.add(Join.joinTuple(tuple, probeAttribute, match, buildAttribute)));
+		}
+	}
+
+	/**
+	 * Releases the current pair of spill partitions, then loads the smaller
+	 * partition of the next pair into the hash table and starts to stream the
+	 * larger one, or joins the pair into a materialized result, if the smaller
+	 * partition does not fit.
+	 *
+	 * @return whether there was another pair
+	 */
+	private boolean openPartitions() {
+		closeStreamed();
+		releaseResident();
+		while (partition < buildPartitions.length) {
+			Relation buildPartition = buildPartitions[partition];
+			Relation probePartition = probePartitions[partition];
+			partition++;
+			if (buildPartition == null || probePartition == null)
+				continue;
+
+			boolean probeTable = probePartition.getBlockCount() < buildPartition.getBlockCount();
+			Relation table = probeTable ? probePartition : buildPartition;
+			// one block to stream the larger partition
+			if (table.getBlockCount() > blockManager.getFreeBlockCount() - reserved - 1) {
+				Relation result = new Relation();
+				try (PinningOutputTarget target = new PinningOutputTarget(result, blockManager)) {
+					new HashEquiJoin(blockManager).join(probePartition, probeAttribute, buildPartition,
+							buildAttribute, target::addTuple);
+				}
+				materialized = new ScanOperator(result, blockManager);
+				materialized.setReservedBlocks(reserved);
+				materialized.open();
+				return true;
+			}
+
+			resident = table;
+			hashTable = new TupleHashTable(probeTable ? probeAttribute : buildAttribute, 0);
+			for (Block block : table) {
+				blockManager.pin(block);
+				pinned++;
+				for (Tuple tuple : block) {
+					hashTable.add(tuple);
+				}
+			}
+			stream(new ScanOperator(probeTable ? buildPartition : probePartition, blockManager), probeTable);
+			return true;
+		}
+		return false;
+	}
+
+	private void closeStreamed() {
+		if (streamed != null) {
+			streamed.close();
+			streamed = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		if (materialized != null) {
+			materialized.close();
+			materialized = null;
+		}
+		closeStreamed();
+		releaseResident();
+		buildPartitions = null;
+		probePartitions = null;
+		matches.clear();
+	}
+
+	/**
+	 * Unpins the resident blocks, the in-memory blocks of an input or the blocks
+	 * of the spill partition in the hash table.
+	 */
+	private void releaseResident() {
+		if (resident == null)
+			return;
+		for (Block block : resident) {
+			if (pinned == 0)
+				break;
+			blockManager.unpin(block);
+			pinned--;
+		}
+		resident = null;
+		hashTable.clear();
+	}
+
+	@Override
+	public void setReservedBlocks(int blocks) {
+		reserved = blocks;
+	}
+
+	@Override
+	public int getMinimumBlocks() {
+		// one resident block while probing, or one block to read the build input into
+		return Math.max(probe.getMinimumBlocks(), build.getMinimumBlocks()) + 1;
+	}
+}
@@ -0,0 +1,156 @@
+package join.operators;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import join.algorithms.Join;
+import join.datastructures.Block;
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.datastructures.TupleHashTable;
+import join.manager.BlockManager;
+
+/**
+ * Block nested-loop equi-join operator. It reads chunks of its outer input into
+ * pinned in-memory blocks, as many as the free blocks allow while keeping the
+ * blocks needed by the inner input free, and opens the inner input once per
+ * chunk. The output tuples hold the attributes of the outer tuple followed by
+ * the attributes of the inner tuple.
+ *
+ * The inner input is evaluated again for every chunk, so it should be cheap to
+ * re-open, e.g. a {@link ScanOperator}.
+ */
+public class NestedLoopJoinOperator implements Operator {
+
+	private final Operator outer;
+	private final int outerAttribute;
+	private final Operator inner;
+	private final int innerAttribute;
+	private final BlockManager blockManager;
+
+	private final List<Block> chunk = new ArrayList<>();
+	private TupleHashTable hashTable;
+	private final Deque<Tuple> matches = new ArrayDeque<>();
+	// the outer tuple that did not fit into the last chunk
+	private Tuple carry;
+	private boolean outerDone;
+	private boolean innerOpen;
+	private int reserved;
+
+	/**
+	 * Constructs a new nested-loop join operator.
+	 *
+	 * @param outer          The input that is read in chunks.
+	 * @param outerAttribute The join attribute of the outer input.
+	 * @param inner          The input that is read once per chunk.
+	 * @param innerAttribute The join attribute of the inner input.
+	 * @param blockManager   The block manager to use.
+	 */
+	public NestedLoopJoinOperator(Operator outer, int outerAttribute, Operator inner, int innerAttribute,
+			BlockManager blockManager) {
+		this.outer = outer;
+		this.outerAttribute = outerAttribute;
+		this.inner = inner;
+		this.innerAttribute = innerAttribute;
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void open() {
+		hashTable = new TupleHashTable(outerAttribute, 0);
+		carry = null;
+		outerDone = false;
+		// a chunk block is pinned while the outer input is read, and the inner input
+		// is read while the chunk is pinned
+		outer.setReservedBlocks(reserved + inner.getMinimumBlocks() + 1);
+		inner.setReservedBlocks(reserved);
+		outer.open();
+	}
+
+	@Override
+	public Tuple next() {
+		while (matches.isEmpty()) {
+			if (innerOpen) {
+				Tuple tuple = inner.next();
+				if (tuple != null) {
+					hashTable.forEachMatch(tuple.getKey(innerAttribute),
+							match -> matches.add(Join.joinTuple(match, outerAttribute, tuple, innerAttribute)));
+					continue;
+				}
+				inner.close();
+				innerOpen = false;
+				releaseChunk();
+			}
+			if (outerDone || !readChunk())
+				return null;
+			inner.open();
+			innerOpen = true;
+		}
+		return matches.poll();
+	}
+
+	/**
+	 * Reads the next chunk of the outer input.
+	 *
+	 * @return <tt>false</tt>, if the outer input is exhausted
+	 */
+	private boolean readChunk() {
+		Relation blocks = new Relation(true);
+		// the outer input may pin further blocks while the chunk is read
+		int keepFree = reserved + inner.getMinimumBlocks() + outer.getMinimumBlocks();
+		Block block = null;
+		while (true) {
+			Tuple tuple = carry != null ? carry : outer.next();
+			carry = null;
+			if (tuple == null) {
+				outerDone = true;
+				break;
+			}
+			if (block == null || !block.addTuple(tuple)) {
+				if (block != null && blockManager.getFreeBlockCount() <= keepFree) {
+					carry = tuple;
+					break;
+				}
+				block = blocks.getFreeBlock(blockManager);
+				blockManager.pin(block);
+				chunk.add(block);
+				block.addTuple(tuple);
+			}
+			hashTable.add(tuple);
+		}
+		return hashTable.size() > 0;
+	}
+
+	private void releaseChunk() {
+		for (Block block : chunk) {
+			blockManager.unpin(block);
+		}
+		chunk.clear();
+		if (hashTable != null)
+			hashTable.clear();
+	}
+
+	@Override
+	public void close() {
+		if (innerOpen) {
+			inner.close();
+			innerOpen = false;
+		}
+		releaseChunk();
+		matches.clear();
+		outer.close();
+	}
+
+	@Override
+	public void setReservedBlocks(int blocks) {
+		reserved = blocks;
+	}
+
+	@Override
+	public int getMinimumBlocks() {
+		// the outer input stays open while the inner input is read
+		return outer.getMinimumBlocks() + inner.getMinimumBlocks() + 1;
+	}
+}
@@ -0,0 +1,80 @@
+package join.operators;
+
+import java.util.function.Consumer;
+
+import join.datastructures.Tuple;
+
+/**
+ * An operator of a pipelined query plan in the iterator model. An operator is
+ * opened, delivers its tuples one at a time and is closed again. Join operators
+ * pull the tuples of their inputs, so intermediate results flow through the
+ * plan without being written to blocks, as long as memory permits.
+ *
+ * An operator can be opened again after it was closed, and then delivers its
+ * tuples once more.
+ */
+public interface Operator {
+
+	/**
+	 * Prepares the operator to deliver its tuples, e.g. pins blocks or builds hash
+	 * tables.
+	 */
+	void open();
+
+	/**
+	 * Returns the next tuple.
+	 *
+	 * @return the next tuple, or <tt>null</tt>, if all tuples were delivered
+	 */
+	Tuple next();
+
+	/**
+	 * Releases all blocks the operator still holds.
+	 */
+	void close();
+
+	/**
+	 * Returns the number of blocks the operator needs at least to be pipelined.
+	 * Join operators keep this many blocks free for their pipelined input.
+	 *
+	 * @return the minimum number of pinned blocks
+	 */
+	int getMinimumBlocks();
+
+	/**
+	 * Returns the number of blocks of the tuples the operator delivers, if it is
+	 * known without evaluating the operator, like the size of a scanned relation.
+	 *
+	 * @return the number of blocks, or -1, if it is not known
+	 */
+	default int getBlockCount() {
+		return -1;
+	}
+
+	/**
+	 * Tells the operator how many blocks its consumer needs to pin while the
+	 * operator is open. Operators that pin as many blocks as are free leave this
+	 * many blocks free. It has to be set before the operator is opened.
+	 *
+	 * @param blocks the number of blocks to leave free
+	 */
+	default void setReservedBlocks(int blocks) {
+	}
+
+	/**
+	 * Opens the operator, passes all its tuples to the consumer and closes it.
+	 *
+	 * @param consumer the consumer of the tuples
+	 */
+	default void run(Consumer<Tuple> consumer) {
+		open();
+		try {
+			Tuple tuple;
+			while ((tuple = next()) != null) {
+				consumer.accept(tuple);
+			}
+		} finally {
+			close();
+		}
+	}
+}
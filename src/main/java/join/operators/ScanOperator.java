@@ -0,0 +1,66 @@
+package join.operators;
+
+import join.datastructures.Relation;
+import join.datastructures.Tuple;
+import join.helper.PinningTupleIterator;
+import join.manager.BlockManager;
+
+/**
+ * Delivers the tuples of a relation, with one block pinned at a time, and as
+ * many blocks read ahead as the block manager is configured to, while the
+ * blocks reserved for the consumer stay free.
+ */
+public class ScanOperator implements Operator {
+
+	private final Relation relation;
+	private final BlockManager blockManager;
+	private PinningTupleIterator iterator;
+	private int reserved;
+
+	public ScanOperator(Relation relation, BlockManager blockManager) {
+		this.relation = relation;
+		this.blockManager = blockManager;
+	}
+
+	@Override
+	public void open() {
+		iterator = new PinningTupleIterator(relation.iterator(), blockManager, blockManager.getReadAhead(), reserved);
+	}
+
+	@Override
+	public Tuple next() {
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+	@Override
+	public void close() {
+		if (iterator != null) {
+			iterator.close();
+			iterator = null;
+		}
+	}
+
+	@Override
+	public int getMinimumBlocks() {
+		return 1;
+	}
+
+	@Override
+	public int getBlockCount() {
+		return relation.getBlockCount();
+	}
+
+	@Override
+	public void setReservedBlocks(int blocks) {
+		this.reserved = blocks;
+	}
+
+	/**
+	 * Returns the scanned relation.
+	 *
+	 * @return the relation
+	 */
+	public Relation getRelation() {
+		return relation;
+	}
+}
@@ -0,0 +1,47 @@
+package join.planner;
+
+import join.algorithms.Join;
+
+/**
+ * A join algorithm with its parameters, chosen by the {@link JoinPlanner}, and
+ * its estimated costs.
+ */
+public final class JoinPlan {
+
+	private final Join join;
+	private final String description;
+	private final int estimatedIO;
+
+	JoinPlan(Join join, String description, int estimatedIO) {
+		this.join = join;
+		this.description = description;
+		this.estimatedIO = estimatedIO;
+	}
+
+	/**
+	 * Returns the configured join algorithm.
+	 *
+	 * @return the join to execute
+	 */
+	public Join getJoin() {
+		return join;
+	}
+
+	/**
+	 * Returns a description of the algorithm and its parameters.
+	 *
+	 * @return the description
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	public int getEstimatedIO() {
+		return estimatedIO;
+	}
+
+	@Override
+	public String toString() {
+		return description + " (estimated IO: " + estimatedIO + ")";
+	}
+}
@@ -0,0 +1,156 @@
+package join.planner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import join.algorithms.BlockNestedLoopEquiJoin;
+import join.algorithms.HashEquiJoin;
+import join.algorithms.HybridHashEquiJoin;
+import join.algorithms.Join;
+import join.algorithms.ParallelHashEquiJoin;
+import join.algorithms.SortMergeEquiJoin;
+import join.datastructures.Relation;
+import join.datastructures.RelationStatistics;
+import join.datastructures.RelationStatistics.AttributeStatistics;
+import join.manager.BlockManager;
+
+/**
+ * A cost-based planner, which chooses the join algorithm and its parameters with
+ * the least estimated IO for two relations. The estimates use the statistics of
+ * the relations, if they were gathered.
+ *
+ * All algorithms use the relation with fewer blocks as build (or outer)
+ * relation, so for a join of two relations the join order is decided by the
+ * block counts, which the planner reports as part of the plan.
+ */
+public class JoinPlanner {
+
+	/**
+	 * The false-positive rate of the Bloom filters of filtering plans.
+	 */
+	public static final double FALSE_POSITIVE_RATE = 0.01;
+
+	private final BlockManager blockManager;
+	private final int threads;
+
+	/**
+	 * Constructs a new planner.
+	 *
+	 * @param blockManager The block manager the joins will use.
+	 * @param threads      The number of threads parallel algorithms may use.
+	 */
+	public JoinPlanner(BlockManager blockManager, int threads) {
+		this.blockManager = blockManager;
+		this.threads = threads;
+	}
+
+	/**
+	 * Returns the plan with the least estimated IO.
+	 */
+	public JoinPlan plan(Relation relation1, int joinAttribute1, Relation relation2, int joinAttribute2) {
+		return getCandidates(relation1, joinAttribute1, relation2, joinAttribute2).get(0);
+	}
+
+	/**
+	 * Returns all plans that can be executed with the free blocks, ordered by their
+	 * estimated IO. Of plans with the same estimate, parallel ones come first.
+	 */
+	public List<JoinPlan> getCandidates(Relation relation1, int joinAttribute1, Relation relation2,
+			int joinAttribute2) {
+		int freeBlocks = blockManager.getFreeBlockCount();
+		boolean swapped = relation2.getBlockCount() < relation1.getBlockCount();
+		Relation build = swapped ? relation2 : relation1;
+		String side = ", build side: relation " + (swapped ? 2 : 1);
+
+		List<JoinPlan> plans = new ArrayList<>();
+		if (freeBlocks >= 3) {
+			int bucketCount = HashEquiJoin.getBucketCount(build.getBlockCount(), freeBlocks);
+			if (threads > 1) {
+				add(plans, new ParallelHashEquiJoin(threads, blockManager),
+						"parallel hash join, threads: " + threads + side, relation1, joinAttribute1, relation2,
+						joinAttribute2);
+			}
+			add(plans, new HashEquiJoin(bucketCount, blockManager), "hash join, buckets: " + bucketCount + side,
+					relation1, joinAttribute1, relation2, joinAttribute2);
+			add(plans, new HashEquiJoin(bucketCount, FALSE_POSITIVE_RATE, blockManager),
+					"hash join with Bloom filter, buckets: " + bucketCount + side, relation1, joinAttribute1,
+					relation2, joinAttribute2);
+			add(plans, new SortMergeEquiJoin(blockManager), "sort-merge join", relation1, joinAttribute1, relation2,
+					joinAttribute2);
+		}
+		if (freeBlocks >= 4) {
+			add(plans, new HybridHashEquiJoin(blockManager), "hybrid hash join" + side, relation1, joinAttribute1,
+					relation2, joinAttribute2);
+		}
+		add(plans, new BlockNestedLoopEquiJoin(FALSE_POSITIVE_RATE, blockManager),
+				"block nested-loop join, outer: relation " + (swapped ? 2 : 1), relation1, joinAttribute1, relation2,
+				joinAttribute2);
+
+		plans.sort(Comparator.comparingInt(JoinPlan::getEstimatedIO));
+		return plans;
+	}
+
+	private static void add(List<JoinPlan> plans, Join join, String description, Relation relation1,
+			int joinAttribute1, Relation relation2, int joinAttribute2) {
+		int estimate = join.getIOEstimate(relation1, joinAttribute1, relation2, joinAttribute2);
+		plans.add(new JoinPlan(join, description, estimate));
+	}
+
+	/**
+	 * Estimates the number of result tuples of a join. Frequent values are joined
+	 * by their counts, all other values are assumed to be uniformly distributed,
+	 * with the values of the attribute with fewer distinct values contained in the
+	 * other one.
+	 *
+	 * @return the estimated result size, or -1, if the statistics are missing
+	 */
+	public static long estimateResultSize(Relation relation1, int joinAttribute1, Relation relation2,
+			int joinAttribute2) {
+		RelationStatistics statistics1 = relation1.getStatistics();
+		RelationStatistics statistics2 = relation2.getStatistics();
+		if (statistics1 == null || statistics2 == null)
+			return -1;
+		AttributeStatistics attribute1 = statistics1.getAttribute(joinAttribute1);
+		AttributeStatistics attribute2 = statistics2.getAttribute(joinAttribute2);
+		if (attribute1 == null || attribute2 == null)
+			return 0;
+
+		Map<String, Long> frequent1 = attribute1.getHeavyHitters();
+		Map<String, Long> frequent2 = attribute2.getHeavyHitters();
+		double average1 = getAverageCount(statistics1.getTupleCount(), attribute1);
+		double average2 = getAverageCount(statistics2.getTupleCount(), attribute2);
+
+		Set<String> values = new HashSet<>(frequent1.keySet());
+		values.addAll(frequent2.keySet());
+		double size = 0;
+		double rest1 = statistics1.getTupleCount();
+		double rest2 = statistics2.getTupleCount();
+		for (String value : values) {
+			double count1 = frequent1.containsKey(value) ? frequent1.get(value) : average1;
+			double count2 = frequent2.containsKey(value) ? frequent2.get(value) : average2;
+			size += count1 * count2;
+			rest1 -= count1;
+			rest2 -= count2;
+		}
+		double distinct1 = Math.max(1, attribute1.getDistinctCount() - values.size());
+		double distinct2 = Math.max(1, attribute2.getDistinctCount() - values.size());
+		size += Math.max(0, rest1) * Math.max(0, rest2) / Math.max(distinct1, distinct2);
+		return Math.round(size);
+	}
+
+	/**
+	 * Returns the average count of the values that are not frequent.
+	 */
+	private static double getAverageCount(long tupleCount, AttributeStatistics attribute) {
+		long frequentCount = 0;
+		for (long count : attribute.getHeavyHitters().values()) {
+			frequentCount += count;
+		}
+		long otherValues = attribute.getDistinctCount() - attribute.getHeavyHitters().size();
+		return otherValues <= 0 ? 0 : Math.max(0, tupleCount - frequentCount) / (double) otherValues;
+	}
+}